@@ -0,0 +1,49 @@
+import ast.Program;
+import benchmarks.Compiler;
+import runtime.BasProgram;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// the compiler as seen by the benchmarks (see benchmarks.Compiler)
+public class BenchmarkCompiler implements Compiler {
+
+    @Override
+    public int countTokens(CharSequence source) {
+        return Tokenizer.countTokens(source);
+    }
+
+    @Override
+    public Program parse(CharSequence source) throws IOException {
+        return new Parser().parse(source);
+    }
+
+    @Override
+    public void typeCheck(Program program) {
+        TypeChecker.check(program);
+    }
+
+    @Override
+    public Program optimise(Program program, String level) {
+        return PassManager.withDefaultPasses(OptimisationLevel.fromFlag(level), Duration.ofSeconds(1)).run(program);
+    }
+
+    @Override
+    public byte[] generateClass(Program program, String className, boolean budgeted) throws IOException {
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withBudgeted(budgeted));
+        program.visit(javaAsm);
+        return javaAsm.generateClass(className);
+    }
+
+    @Override
+    public Supplier<BasProgram> define(byte[] bytes) {
+        var program = CompiledProgram.defineHidden(bytes);
+        return () -> program.newInstance(null, null);
+    }
+
+    @Override
+    public String generateProgram(long seed, int lines) {
+        return ProgramGenerator.generate(seed, ProgramGenerator.Shape.DEFAULT.withLines(lines));
+    }
+}
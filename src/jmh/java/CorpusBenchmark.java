@@ -0,0 +1,194 @@
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+/*
+ Compiles and runs every program in a corpus laid out like the test examples:
+ a directory per program holding input.bas, the output.txt it should print
+ and optionally the stdin.txt to feed it.  Each program is first run once to
+ check it prints what it should, then compiled and run warmup + runs more
+ times, with RND seeded the same every time and output thrown away, reporting
+ the median compile time (from source to loaded class), time to first output
+ and run time of the measured runs.  Every run is of the program compiled
+ first, so the JIT gets to compile it as it would a program run repeatedly by
+ a host, while each compile is of a new class.
+
+ Usage: CorpusBenchmark <corpus dir> [--warmup=<n>] [--runs=<n>] [--seed=<n>] [-O<level>]
+
+ Exits with status 1 if any program printed the wrong thing.
+ */
+public class CorpusBenchmark {
+    private final OptimisationLevel level;
+    private final long seed;
+
+    CorpusBenchmark(OptimisationLevel level, long seed) {
+        this.level = level;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = null;
+        var warmup = 10;
+        var runs = 20;
+        var seed = 1L;
+        var level = OptimisationLevel.O1;
+        for (var arg: args) {
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.matches("-O[0-9]")) {
+                level = OptimisationLevel.fromFlag(arg);
+            } else if (arg.startsWith("-")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            } else {
+                corpus = Path.of(arg);
+            }
+        }
+        if (corpus == null) {
+            throw new IllegalArgumentException("Usage: CorpusBenchmark <corpus dir> [--warmup=<n>] [--runs=<n>] [--seed=<n>] [-O<level>]");
+        }
+
+        List<Path> programs;
+        try (Stream<Path> directories = Files.list(corpus)) {
+            programs = directories
+                .filter(directory -> Files.exists(directory.resolve("input.bas")))
+                .sorted()
+                .toList();
+        }
+        var benchmark = new CorpusBenchmark(level, seed);
+        var failures = 0;
+        System.out.printf("%-20s %6s %12s %14s %12s %12s%n", "PROGRAM", "STATUS", "COMPILE ms", "FIRST OUT us", "RUN us", "MIN RUN us");
+        for (var program: programs) {
+            var result = benchmark.measure(program, warmup, runs);
+            if (!result.correct()) {
+                failures++;
+                System.out.printf("%-20s %6s%n", program.getFileName(), "WRONG");
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-20s %6s %12.3f %14s %12.1f %12.1f%n",
+                program.getFileName(),
+                "OK",
+                result.compileTime().toNanos() / 1_000_000.0,
+                result.firstOutput() == null ? "-" : String.format(Locale.ROOT, "%.1f", result.firstOutput().toNanos() / 1_000.0),
+                result.runTime().toNanos() / 1_000.0,
+                result.minRunTime().toNanos() / 1_000.0
+            );
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    Result measure(Path directory, int warmup, int runs) throws IOException {
+        var source = Files.readString(directory.resolve("input.bas"));
+        var stdinFile = directory.resolve("stdin.txt");
+        var stdin = Files.exists(stdinFile) ? Files.readAllBytes(stdinFile) : new byte[0];
+        var outputFile = directory.resolve("output.txt");
+
+        var program = compile(source);
+        var output = new ByteArrayOutputStream();
+        run(program, stdin, new FirstWriteOutputStream(output));
+        if (Files.exists(outputFile) && !Files.readString(outputFile).equals(output.toString(StandardCharsets.UTF_8))) {
+            return new Result(false, null, null, null, null);
+        }
+
+        var compileNanos = new long[runs];
+        var firstOutputNanos = new long[runs];
+        var runNanos = new long[runs];
+        for (var i = -warmup; i < runs; i++) {
+            var start = System.nanoTime();
+            compile(source);
+            var compiled = System.nanoTime();
+            var sink = new FirstWriteOutputStream(OutputStream.nullOutputStream());
+            var runStart = System.nanoTime();
+            run(program, stdin, sink);
+            var end = System.nanoTime();
+            if (i >= 0) {
+                compileNanos[i] = compiled - start;
+                firstOutputNanos[i] = sink.firstWrite == 0 ? -1 : sink.firstWrite - runStart;
+                runNanos[i] = end - runStart;
+            }
+        }
+        var firstOutput = median(firstOutputNanos);
+        return new Result(
+            true,
+            Duration.ofNanos(median(compileNanos)),
+            firstOutput < 0 ? null : Duration.ofNanos(firstOutput),
+            Duration.ofNanos(median(runNanos)),
+            Duration.ofNanos(Arrays.stream(runNanos).min().orElse(0))
+        );
+    }
+
+    private CompiledProgram compile(String source) throws IOException {
+        var parsed = new Parser().parse(source);
+        var types = TypeChecker.check(parsed);
+        var program = PassManager.withDefaultPasses(level, Duration.ofSeconds(1)).run(parsed);
+        var javaAsm = new JavaASM(TypeChecker.afterPasses(parsed, types, program), JavaASM.Options.DEFAULT);
+        program.visit(javaAsm);
+        return CompiledProgram.defineHidden(javaAsm.generateClass("CorpusProgram"));
+    }
+
+    private void run(CompiledProgram program, byte[] stdin, OutputStream out) {
+        var instance = program.newInstance(new Scanner(new ByteArrayInputStream(stdin)), new PrintStream(out, false, StandardCharsets.UTF_8));
+        instance.setRandomSeed(seed);
+        instance.run();
+        instance.getOut().flush();
+    }
+
+    private static long median(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // null where the program printed nothing
+    record Result(boolean correct, Duration compileTime, Duration firstOutput, Duration runTime, Duration minRunTime) {
+
+    }
+
+    // notes when the program first prints anything (PrintStream passes every print straight through)
+    private static class FirstWriteOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long firstWrite;
+
+        FirstWriteOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            noteWrite();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            noteWrite();
+            out.write(b, off, len);
+        }
+
+        private void noteWrite() {
+            if (firstWrite == 0) {
+                firstWrite = System.nanoTime();
+            }
+        }
+    }
+}
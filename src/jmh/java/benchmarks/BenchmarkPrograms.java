@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/*
+ BASIC sources for the benchmarks: the example programs from the tests, and
+ generated programs of any size made of the sort of code real programs have
+ (loops over arrays, conditions, string handling, subroutines and output).
+ */
+final class BenchmarkPrograms {
+
+    private BenchmarkPrograms() {
+    }
+
+    /*
+     small: all the example programs (each only a few lines) together, as a
+     benchmark iteration over just one would mostly measure set up
+     medium and large: generated, large being around half the most that fits
+     in run()
+     */
+    static String[] sources(String size) {
+        return switch (size) {
+            case "small" -> examples();
+            case "medium" -> new String[] {generate(200)};
+            case "large" -> new String[] {generate(2000)};
+            default -> throw new IllegalArgumentException("Unknown size: " + size);
+        };
+    }
+
+    static String[] examples() {
+        try {
+            var examples = Path.of(BenchmarkPrograms.class.getClassLoader().getResource("examples").toURI());
+            try (Stream<Path> directories = Files.list(examples)) {
+                return directories
+                    .sorted()
+                    .map(directory -> directory.resolve("input.bas"))
+                    .map(BenchmarkPrograms::read)
+                    .toArray(String[]::new);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // about the given number of lines, always the same for the same number
+    static String generate(int lines) {
+        var source = new StringBuilder();
+        source.append("10 DIM A(10)\n");
+        source.append("20 X = 0: Y = 1: S$ = \"\"\n");
+        var lineNumber = 30;
+        for (var block = 1; block <= lines / 5; block++) {
+            source.append(lineNumber).append(" FOR I = 1 TO 10\n");
+            source.append(lineNumber + 1).append(" A(I) = A(I) + I * ").append(block).append(" - Y / 2\n");
+            source.append(lineNumber + 2).append(" NEXT I\n");
+            source.append(lineNumber + 3).append(" IF X > ").append(block).append(" THEN X = X - ").append(block)
+                .append(": S$ = LEFT$(S$ + \"AB\", 10)\n");
+            if (block % 10 == 0) {
+                source.append(lineNumber + 4).append(" GOSUB 900000\n");
+            } else {
+                source.append(lineNumber + 4).append(" X = X + SIN(Y) * ").append(block).append(": PRINT X; S$\n");
+            }
+            lineNumber += 10;
+        }
+        source.append(lineNumber).append(" END\n");
+        source.append("900000 Y = Y + 1: PRINT \"Y = \"; Y\n");
+        source.append("900010 RETURN\n");
+        return source.toString();
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
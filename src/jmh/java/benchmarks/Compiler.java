@@ -0,0 +1,43 @@
+package benchmarks;
+
+import ast.Program;
+import runtime.BasProgram;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/*
+ JMH only runs benchmarks in a package, but the compiler is in the unnamed
+ package, which code in a package can't refer to.  So benchmarks go through
+ this, implemented by BenchmarkCompiler in the unnamed package, which is
+ looked up reflectively just once.
+ */
+public interface Compiler {
+    Compiler INSTANCE = load();
+
+    private static Compiler load() {
+        try {
+            return (Compiler) Class.forName("BenchmarkCompiler").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // see Tokenizer.countTokens
+    int countTokens(CharSequence source);
+
+    Program parse(CharSequence source) throws IOException;
+
+    void typeCheck(Program program);
+
+    // runs the optimisation passes for a level given as on the command line, e.g. -O2
+    Program optimise(Program program, String level);
+
+    byte[] generateClass(Program program, String className, boolean budgeted) throws IOException;
+
+    // loads the class, each call to the supplier then creates a new instance ready to run
+    Supplier<BasProgram> define(byte[] bytes);
+
+    // see ProgramGenerator, with its default shape apart from the number of lines
+    String generateProgram(long seed, int lines);
+}
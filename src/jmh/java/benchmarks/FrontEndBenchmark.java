@@ -0,0 +1,70 @@
+package benchmarks;
+
+import ast.Program;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Throughput of each stage of the compiler on its own: tokenizing, parsing
+ (which includes tokenizing, as the parser pulls tokens as it goes) and
+ generating the class from an already parsed program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+    @Param({"small", "medium", "large"})
+    private String size;
+
+    private String[] sources;
+    private Program[] programs;
+
+    @Setup
+    public void setUp() throws IOException {
+        sources = BenchmarkPrograms.sources(size);
+        programs = new Program[sources.length];
+        for (var i = 0; i < sources.length; i++) {
+            programs[i] = Compiler.INSTANCE.parse(sources[i]);
+            Compiler.INSTANCE.typeCheck(programs[i]);
+        }
+    }
+
+    @Benchmark
+    public int tokenize() {
+        var tokens = 0;
+        for (var source: sources) {
+            tokens += Compiler.INSTANCE.countTokens(source);
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        for (var source: sources) {
+            blackhole.consume(Compiler.INSTANCE.parse(source));
+        }
+    }
+
+    @Benchmark
+    public void generateClass(Blackhole blackhole) throws IOException {
+        for (var program: programs) {
+            blackhole.consume(Compiler.INSTANCE.generateClass(program, "Benchmark", false));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.io.PrintStream;
+
+/*
+ The kernels of KernelBenchmark as they'd be written in Java by hand: int
+ loop counters and array indexes, floats for BASIC's numbers, a
+ StringBuilder for building strings and a recursive method for the GOSUBs.
+ The kernels are sized so every number stays a whole number a float holds
+ exactly, so these print just what the BASIC does.
+ */
+final class JavaKernels {
+
+    private JavaKernels() {
+    }
+
+    static void nestedLoops(PrintStream out) {
+        var s = 0.0f;
+        for (var i = 1; i <= 50; i++) {
+            for (var j = 1; j <= 50; j++) {
+                s = s + i * j - j;
+            }
+        }
+        printNumber(out, s);
+        out.println();
+    }
+
+    static void arraySum(PrintStream out) {
+        var a = new float[1000];
+        for (var i = 1; i <= 1000; i++) {
+            a[i - 1] = i * 2;
+        }
+        var s = 0.0f;
+        for (var r = 1; r <= 10; r++) {
+            for (var i = 1; i <= 1000; i++) {
+                s += a[i - 1];
+            }
+        }
+        printNumber(out, s);
+        out.println();
+    }
+
+    static void stringBuilding(PrintStream out) {
+        var s = new StringBuilder();
+        for (var i = 1; i <= 500; i++) {
+            s.append((char) ('A' + i % 26));
+        }
+        printNumber(out, s.length());
+        out.print(" ");
+        out.print(s.substring(0, 10));
+        out.print(s.substring(s.length() - 10));
+        out.println();
+    }
+
+    static void gosubRecursion(PrintStream out) {
+        printNumber(out, calls(1));
+        out.println();
+    }
+
+    private static int calls(int depth) {
+        var n = 1;
+        if (depth < 12) {
+            n += calls(depth + 1);
+            n += calls(depth + 1);
+        }
+        return n;
+    }
+
+    static void printLoop(PrintStream out) {
+        for (var i = 1; i <= 1000; i++) {
+            printNumber(out, i);
+            out.print("*");
+            printNumber(out, i);
+            out.print("=");
+            printNumber(out, i * i);
+            out.println();
+        }
+    }
+
+    // as BASIC prints whole numbers: a space for the sign unless negative, and one after
+    private static void printNumber(PrintStream out, float number) {
+        if (number >= 0) {
+            out.print(' ');
+        }
+        out.print((int) number);
+        out.print(' ');
+    }
+}
@@ -0,0 +1,177 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import runtime.BasProgram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ How far the code JavaASM generates is from what could be written by hand:
+ small BASIC kernels, each doing one thing programs do a lot of, paired with
+ the same thing written in Java (see JavaKernels).  Set up checks both print
+ exactly the same, and the BASIC is compiled with every optimisation (or at
+ -p level=...) so the gap closes as optimisations land.
+
+ Run through main (exec:exec@kernels in the jmh profile), the results are
+ followed by the BASIC to Java ratio for each kernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+    @Param
+    private Kernel kernel;
+
+    @Param({"-O2"})
+    private String level;
+
+    private Supplier<BasProgram> program;
+    private PrintStream out;
+
+    public enum Kernel {
+        NESTED_LOOPS(
+            "10 S = 0\n" +
+            "20 FOR I = 1 TO 50\n" +
+            "30 FOR J = 1 TO 50\n" +
+            "40 S = S + I * J - J\n" +
+            "50 NEXT J\n" +
+            "60 NEXT I\n" +
+            "70 PRINT S\n",
+            JavaKernels::nestedLoops
+        ),
+        ARRAY_SUM(
+            "10 DIM A(1000)\n" +
+            "20 FOR I = 1 TO 1000: A(I) = I * 2: NEXT I\n" +
+            "30 S = 0\n" +
+            "40 FOR R = 1 TO 10\n" +
+            "50 FOR I = 1 TO 1000: S = S + A(I): NEXT I\n" +
+            "60 NEXT R\n" +
+            "70 PRINT S\n",
+            JavaKernels::arraySum
+        ),
+        STRING_BUILDING(
+            "10 S$ = \"\"\n" +
+            "20 FOR I = 1 TO 500\n" +
+            "30 S$ = S$ + CHR$(65 + I - INT(I / 26) * 26)\n" +
+            "40 NEXT I\n" +
+            "50 PRINT LEN(S$); \" \"; LEFT$(S$, 10); RIGHT$(S$, 10)\n",
+            JavaKernels::stringBuilding
+        ),
+        // BASIC has no recursion as such, so a subroutine that calls itself twice down to a depth of 12
+        GOSUB_RECURSION(
+            "10 N = 0: D = 0\n" +
+            "20 GOSUB 100\n" +
+            "30 PRINT N\n" +
+            "40 END\n" +
+            "100 D = D + 1: N = N + 1\n" +
+            "110 IF D < 12 THEN GOSUB 100\n" +
+            "120 IF D < 12 THEN GOSUB 100\n" +
+            "130 D = D - 1\n" +
+            "140 RETURN\n",
+            JavaKernels::gosubRecursion
+        ),
+        PRINT_LOOP(
+            "10 FOR I = 1 TO 1000\n" +
+            "20 PRINT I; \"*\"; I; \"=\"; I * I\n" +
+            "30 NEXT I\n",
+            JavaKernels::printLoop
+        );
+
+        private final String source;
+        private final Consumer<PrintStream> java;
+
+        Kernel(String source, Consumer<PrintStream> java) {
+            this.source = source;
+            this.java = java;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        var parsed = Compiler.INSTANCE.parse(kernel.source);
+        Compiler.INSTANCE.typeCheck(parsed);
+        var bytes = Compiler.INSTANCE.generateClass(Compiler.INSTANCE.optimise(parsed, level), "KernelBenchmarkProgram", false);
+        program = Compiler.INSTANCE.define(bytes);
+
+        var basicOutput = new ByteArrayOutputStream();
+        runBasic(new PrintStream(basicOutput, true, StandardCharsets.UTF_8));
+        var javaOutput = new ByteArrayOutputStream();
+        kernel.java.accept(new PrintStream(javaOutput, true, StandardCharsets.UTF_8));
+        if (!basicOutput.toString(StandardCharsets.UTF_8).equals(javaOutput.toString(StandardCharsets.UTF_8))) {
+            throw new IllegalStateException(kernel + " printed differently, BASIC:\n" + basicOutput + "Java:\n" + javaOutput);
+        }
+        out = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public Object basic() {
+        return runBasic(out);
+    }
+
+    @Benchmark
+    public PrintStream java() {
+        kernel.java.accept(out);
+        return out;
+    }
+
+    private BasProgram runBasic(PrintStream out) {
+        var instance = program.get();
+        instance.setOut(out);
+        instance.run();
+        return instance;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(KernelBenchmark.class.getName())
+            .build();
+        var results = new Runner(options).run();
+
+        var basic = new HashMap<String, Double>();
+        var java = new HashMap<String, Double>();
+        for (RunResult result: results) {
+            var params = result.getParams();
+            var scores = params.getBenchmark().endsWith(".basic") ? basic : java;
+            scores.put(params.getParam("kernel") + " " + params.getParam("level"), result.getPrimaryResult().getScore());
+        }
+        System.out.println();
+        System.out.printf("%-24s %12s %12s %8s%n", "KERNEL", "BASIC us", "JAVA us", "RATIO");
+        for (var kernel: Kernel.values()) {
+            basic.keySet().stream()
+                .filter(key -> key.startsWith(kernel + " ") && java.containsKey(key))
+                .sorted()
+                .forEach(key -> System.out.printf(Locale.ROOT, "%-24s %12.2f %12.2f %8.1f%n",
+                    key, basic.get(key), java.get(key), basic.get(key) / java.get(key)));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Compiling (parsing, type checking and generating the class) generated
+ programs that use the whole language, at sizes up to about the most that
+ fits in run(), to chart compile time against program size.  The gc profiler
+ the jmh profile runs with gives the memory allocated per compile
+ (gc.alloc.rate.norm) alongside.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+    @Param({"100", "200", "400", "800"})
+    private int lines;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Compiler.INSTANCE.generateProgram(1, lines);
+    }
+
+    @Benchmark
+    public byte[] compile() throws IOException {
+        var program = Compiler.INSTANCE.parse(source);
+        Compiler.INSTANCE.typeCheck(program);
+        return Compiler.INSTANCE.generateClass(program, "Benchmark", false);
+    }
+}
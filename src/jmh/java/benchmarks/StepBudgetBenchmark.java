@@ -0,0 +1,68 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.BasProgram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ What counting steps against a budget (see JavaASM.Options) costs a program
+ that does little but loop and call subroutines, the worst case for it.  With
+ budgeted, the budget is large enough to never run out, so the difference is
+ just the counting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBudgetBenchmark {
+    private static final String SOURCE =
+        "10 S = 0\n" +
+        "20 FOR I = 1 TO 10000\n" +
+        "30 GOSUB 100\n" +
+        "40 NEXT I\n" +
+        "50 END\n" +
+        "100 S = S + I\n" +
+        "110 RETURN\n";
+
+    @Param({"false", "true"})
+    private boolean budgeted;
+
+    private Supplier<BasProgram> program;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        var bytes = Compiler.INSTANCE.generateClass(Compiler.INSTANCE.parse(SOURCE), "StepBudgetBenchmarkProgram", budgeted);
+        program = Compiler.INSTANCE.define(bytes);
+        out = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public Object run() {
+        var instance = program.get();
+        instance.setOut(out);
+        if (budgeted) {
+            instance.setStepBudget(Long.MAX_VALUE);
+        }
+        instance.run();
+        return instance;
+    }
+}
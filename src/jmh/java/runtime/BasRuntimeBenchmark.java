@@ -0,0 +1,177 @@
+package runtime;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/*
+ The runtime helpers generated code calls most, each with arguments like the
+ ones BASIC programs pass them: loop counters, money and other small decimals
+ to print, short strings to cut up, the print position anywhere across the
+ line.  The arguments are cycled through from arrays generated with a fixed
+ seed, so every run sees the same ones.
+
+ Being in the runtime package the helpers can be called directly, but the
+ state they depend on (the print position and DATA) is private, so that is
+ set through VarHandles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasRuntimeBenchmark {
+    private static final int VALUES = 1024;
+    private static final VarHandle CURRENT_TAB;
+    private static final VarHandle DATA;
+    private static final VarHandle NEXT_DATA_PTR;
+
+    static {
+        try {
+            var lookup = MethodHandles.privateLookupIn(BasRuntime.class, MethodHandles.lookup());
+            CURRENT_TAB = lookup.findVarHandle(BasRuntime.class, "currentTab", int.class);
+            DATA = lookup.findVarHandle(BasRuntime.class, "data", Object[].class);
+            NEXT_DATA_PTR = lookup.findVarHandle(BasRuntime.class, "nextDataPtr", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final BasRuntime runtime = new BasRuntime();
+    private final float[] numbers = new float[VALUES];
+    private final int[] tabs = new int[VALUES];
+    private final float[] tabTargets = new float[VALUES];
+    private final String[] strings = new String[VALUES];
+    private final float[] midStarts = new float[VALUES];
+    private final float[] midLengths = new float[VALUES];
+    private final float[] rndArguments = new float[VALUES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1977);
+        for (var i = 0; i < VALUES; i++) {
+            numbers[i] = switch (random.nextInt(4)) {
+                // loop counters and other whole numbers
+                case 0 -> random.nextInt(1000);
+                // money
+                case 1 -> random.nextInt(100_000) / 100.0f;
+                // results of division and SIN
+                case 2 -> (random.nextFloat() - 0.5f) * 10;
+                default -> -random.nextInt(100);
+            };
+            tabs[i] = random.nextInt(70);
+            tabTargets[i] = random.nextInt(70);
+            var string = new StringBuilder();
+            for (var length = 1 + random.nextInt(40); string.length() < length; ) {
+                string.append((char) ('A' + random.nextInt(26)));
+            }
+            strings[i] = string.toString();
+            midStarts[i] = 1 + random.nextInt(strings[i].length());
+            midLengths[i] = 1 + random.nextInt(10);
+            // nearly always RND(1), sometimes RND(0) to repeat the last one
+            rndArguments[i] = random.nextInt(10) == 0 ? 0 : 1;
+        }
+        runtime.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        var data = new Object[VALUES];
+        for (var i = 0; i < VALUES; i++) {
+            data[i] = numbers[i];
+        }
+        DATA.set(runtime, data);
+        runtime.setIn(new Scanner(new RepeatingInputStream(numbers)));
+    }
+
+    private int next() {
+        return next = (next + 1) & (VALUES - 1);
+    }
+
+    @Benchmark
+    public void printFloat() {
+        var i = next();
+        CURRENT_TAB.set(runtime, 0);
+        runtime.print(numbers[i]);
+    }
+
+    @Benchmark
+    public void nextPrintZone() {
+        CURRENT_TAB.set(runtime, tabs[next()]);
+        runtime.nextPrintZone();
+    }
+
+    @Benchmark
+    public String fnTAB() {
+        var i = next();
+        CURRENT_TAB.set(runtime, tabs[i]);
+        return runtime.fnTAB(tabTargets[i]);
+    }
+
+    @Benchmark
+    public String fnMID_DOLLAR() {
+        var i = next();
+        return runtime.fnMID_DOLLAR(strings[i], midStarts[i], midLengths[i]);
+    }
+
+    @Benchmark
+    public float fnRND() {
+        return runtime.fnRND(rndArguments[next()]);
+    }
+
+    @Benchmark
+    public float readFLOAT() {
+        // moving the DATA pointer along with the index, so it never runs off the end
+        NEXT_DATA_PTR.set(runtime, next());
+        return runtime.readFLOAT();
+    }
+
+    @Benchmark
+    public float inputFLOAT() {
+        return runtime.inputFLOAT();
+    }
+
+    // the numbers as typed lines, over and over
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] lines;
+        private int position;
+
+        RepeatingInputStream(float[] numbers) {
+            var text = new StringBuilder();
+            for (var number: numbers) {
+                text.append(number).append('\n');
+            }
+            lines = text.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int read() {
+            var b = lines[position];
+            position = (position + 1) % lines.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            var length = Math.min(len, lines.length - position);
+            System.arraycopy(lines, position, b, off, length);
+            position = (position + length) % lines.length;
+            return length;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import ast.Addition;
+import ast.AndExpression;
+import ast.AstVisitor;
+import ast.BinaryExpression;
+import ast.DataStatement;
+import ast.DimStatement;
+import ast.EndStatement;
+import ast.Equals;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatDivision;
+import ast.FloatMultiplication;
+import ast.FloatNegation;
+import ast.FloatPower;
+import ast.FloatSubtraction;
+import ast.ForStatement;
+import ast.FunctionCall;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.IfStatement;
+import ast.InputStatement;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.LetStatement;
+import ast.Line;
+import ast.NextStatement;
+import ast.NotEquals;
+import ast.OnGotoStatement;
+import ast.OrExpression;
+import ast.PrintStatement;
+import ast.Program;
+import ast.ReadStatement;
+import ast.RemarkStatement;
+import ast.RestoreStatement;
+import ast.ReturnStatement;
+import ast.StopStatement;
+import ast.StringConstant;
+import ast.VarName;
+import ast.Variable;
+
+import java.util.List;
+
+/*
+ Counts the statements and expressions in a program, used to report
+ how much each optimisation pass changes the size of the AST
+ */
+public class AstNodeCounter implements AstVisitor {
+    private int count;
+
+    public static int count(Program program) {
+        var counter = new AstNodeCounter();
+        program.visit(counter);
+        return counter.count;
+    }
+
+    @Override
+    public void visit(Line line) {
+        for (var statement: line.statements()) {
+            count++;
+            statement.visit(this);
+        }
+    }
+
+    @Override
+    public void visit(PrintStatement statement) {
+        for (var printable: statement.printables()) {
+            if (printable instanceof Expression expression) {
+                expression.visit(this);
+            }
+        }
+    }
+
+    @Override
+    public void visit(GotoStatement statement) {
+    }
+
+    @Override
+    public void visit(OnGotoStatement statement) {
+        statement.expression().visit(this);
+    }
+
+    @Override
+    public void visit(GoSubStatement statement) {
+    }
+
+    @Override
+    public void visit(ReturnStatement statement) {
+    }
+
+    @Override
+    public void visit(IfStatement statement) {
+        statement.predicate().visit(this);
+        count++;
+        statement.then().visit(this);
+    }
+
+    @Override
+    public void visit(RemarkStatement statement) {
+    }
+
+    @Override
+    public void visit(DataStatement statement) {
+    }
+
+    @Override
+    public void visit(ReadStatement statement) {
+        statement.names().forEach(this::visit);
+    }
+
+    @Override
+    public void visit(RestoreStatement statement) {
+    }
+
+    @Override
+    public void visit(EndStatement statement) {
+    }
+
+    @Override
+    public void visit(StopStatement statement) {
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+        statement.start().visit(this);
+        statement.end().visit(this);
+        if (statement.increment() != null) {
+            statement.increment().visit(this);
+        }
+    }
+
+    @Override
+    public void visit(NextStatement statement) {
+    }
+
+    @Override
+    public void visit(LetStatement statement) {
+        visit(statement.name());
+        statement.expression().visit(this);
+    }
+
+    @Override
+    public void visit(InputStatement statement) {
+        statement.names().forEach(this::visit);
+    }
+
+    @Override
+    public void visit(DimStatement statement) {
+        for (var array: statement.arrays()) {
+            visitAll(array.sizes());
+        }
+    }
+
+    @Override
+    public void visit(StringConstant expression) {
+        count++;
+    }
+
+    @Override
+    public void visit(FloatConstant expression) {
+        count++;
+    }
+
+    @Override
+    public void visit(Variable expression) {
+        count++;
+        visit(expression.name());
+    }
+
+    @Override
+    public void visit(FloatNegation expression) {
+        count++;
+        expression.expr().visit(this);
+    }
+
+    @Override
+    public void visit(Equals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(NotEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(GreaterThan expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(GreaterThanEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(LessThan expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(LessThanEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(AndExpression expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(OrExpression expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(Addition expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatSubtraction expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatMultiplication expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatDivision expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatPower expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FunctionCall expression) {
+        count++;
+        visitAll(expression.args());
+    }
+
+    private void visit(VarName name) {
+        visitAll(name.indexes());
+    }
+
+    private void visitAll(List<Expression> expressions) {
+        for (var expression: expressions) {
+            expression.visit(this);
+        }
+    }
+
+    private void binaryExpression(BinaryExpression expression) {
+        count++;
+        expression.lhs().visit(this);
+        expression.rhs().visit(this);
+    }
+}
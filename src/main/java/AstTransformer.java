@@ -0,0 +1,361 @@
+import ast.Addition;
+import ast.AndExpression;
+import ast.ArrayInit;
+import ast.AstVisitor;
+import ast.BinaryExpression;
+import ast.DataStatement;
+import ast.DimStatement;
+import ast.EndStatement;
+import ast.Equals;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatDivision;
+import ast.FloatMultiplication;
+import ast.FloatNegation;
+import ast.FloatPower;
+import ast.FloatSubtraction;
+import ast.ForStatement;
+import ast.FunctionCall;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.IfStatement;
+import ast.InputStatement;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.LetStatement;
+import ast.Line;
+import ast.NextStatement;
+import ast.NotEquals;
+import ast.OnGotoStatement;
+import ast.OrExpression;
+import ast.PrintStatement;
+import ast.Printable;
+import ast.Program;
+import ast.ReadStatement;
+import ast.RemarkStatement;
+import ast.RestoreStatement;
+import ast.ReturnStatement;
+import ast.Statement;
+import ast.StopStatement;
+import ast.StringConstant;
+import ast.VarName;
+import ast.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BinaryOperator;
+
+/*
+ Base visitor for passes that rewrite the AST.  By default a node is only
+ rebuilt if one of its (transformed) children changed, otherwise it is kept as
+ it was, so whatever a pass doesn't touch stays the same object and anything
+ recorded against it by identity still holds.  Subclasses only need to override
+ the visit methods for the nodes they actually want to change and call
+ statementResult(...) or expressionResult(...) with the replacement.
+ */
+public abstract class AstTransformer implements AstVisitor {
+    private Program transformedProgram;
+    private Line transformedLine;
+    private Statement transformedStatement;
+    private Expression transformedExpression;
+
+    public Program transform(Program program) {
+        program.visit(this);
+        return transformedProgram;
+    }
+
+    public Line transform(Line line) {
+        visit(line);
+        return transformedLine;
+    }
+
+    protected Statement transformStatement(Statement statement) {
+        statement.visit(this);
+        return transformedStatement;
+    }
+
+    protected Expression transformExpression(Expression expression) {
+        expression.visit(this);
+        return transformedExpression;
+    }
+
+    // the same list if none of the expressions changed
+    protected List<Expression> transformAll(List<Expression> expressions) {
+        var transformed = expressions.stream()
+            .map(this::transformExpression)
+            .toList();
+        return unchanged(expressions, transformed) ? expressions : transformed;
+    }
+
+    protected VarName transform(VarName name) {
+        var indexes = transformAll(name.indexes());
+        if (indexes == name.indexes()) {
+            return name;
+        }
+        return new VarName(name.name(), name.dataType(), indexes);
+    }
+
+    // expression itself if neither side changed, otherwise rebuild's new expression from the changed sides
+    protected static Expression rebuildIfChanged(BinaryExpression expression, Expression lhs, Expression rhs, BinaryOperator<Expression> rebuild) {
+        return lhs == expression.lhs() && rhs == expression.rhs() ? expression : rebuild.apply(lhs, rhs);
+    }
+
+    private static boolean unchanged(List<?> before, List<?> after) {
+        for (var i = 0; i < before.size(); i++) {
+            if (before.get(i) != after.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void lineResult(Line line) {
+        transformedLine = line;
+    }
+
+    protected void statementResult(Statement statement) {
+        transformedStatement = statement;
+    }
+
+    protected void expressionResult(Expression expression) {
+        transformedExpression = expression;
+    }
+
+    private void binaryExpression(BinaryExpression expression, BinaryOperator<Expression> rebuild) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        expressionResult(rebuildIfChanged(expression, lhs, rhs, rebuild));
+    }
+
+    @Override
+    public void visit(Program program) {
+        var lines = new ArrayList<Line>();
+        for (var line: program.lines()) {
+            lines.add(transform(line));
+        }
+        transformedProgram = unchanged(program.lines(), lines) ? program : new Program(lines);
+    }
+
+    @Override
+    public void visit(Line line) {
+        var statements = new ArrayList<Statement>();
+        for (var statement: line.statements()) {
+            statements.add(transformStatement(statement));
+        }
+        lineResult(unchanged(line.statements(), statements) ? line : new Line(line.label(), statements));
+    }
+
+    @Override
+    public void visit(PrintStatement statement) {
+        var printables = new ArrayList<Printable>();
+        for (var printable: statement.printables()) {
+            if (printable instanceof Expression expression) {
+                printables.add(transformExpression(expression));
+            } else {
+                printables.add(printable);
+            }
+        }
+        statementResult(unchanged(statement.printables(), printables) ? statement : new PrintStatement(printables));
+    }
+
+    @Override
+    public void visit(GotoStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(OnGotoStatement statement) {
+        var expression = transformExpression(statement.expression());
+        statementResult(expression == statement.expression()
+            ? statement
+            : new OnGotoStatement(expression, statement.destinationLabels()));
+    }
+
+    @Override
+    public void visit(GoSubStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(ReturnStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(IfStatement statement) {
+        var predicate = transformExpression(statement.predicate());
+        var then = transformStatement(statement.then());
+        statementResult(predicate == statement.predicate() && then == statement.then()
+            ? statement
+            : new IfStatement(predicate, then));
+    }
+
+    @Override
+    public void visit(RemarkStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(DataStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(ReadStatement statement) {
+        var names = statement.names().stream().map(this::transform).toList();
+        statementResult(unchanged(statement.names(), names) ? statement : new ReadStatement(names));
+    }
+
+    @Override
+    public void visit(RestoreStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(EndStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(StopStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+        var start = transformExpression(statement.start());
+        var end = transformExpression(statement.end());
+        var increment = statement.increment() == null ? null : transformExpression(statement.increment());
+        if (start == statement.start() && end == statement.end() && increment == statement.increment()) {
+            statementResult(statement);
+        } else {
+            statementResult(new ForStatement(statement.varname(), start, end, increment));
+        }
+    }
+
+    @Override
+    public void visit(NextStatement statement) {
+        statementResult(statement);
+    }
+
+    @Override
+    public void visit(LetStatement statement) {
+        var name = transform(statement.name());
+        var expression = transformExpression(statement.expression());
+        statementResult(name == statement.name() && expression == statement.expression()
+            ? statement
+            : new LetStatement(name, expression));
+    }
+
+    @Override
+    public void visit(InputStatement statement) {
+        var names = statement.names().stream().map(this::transform).toList();
+        statementResult(unchanged(statement.names(), names) ? statement : new InputStatement(statement.prompt(), names));
+    }
+
+    @Override
+    public void visit(DimStatement statement) {
+        var arrays = statement.arrays().stream()
+            .map(array -> {
+                var sizes = transformAll(array.sizes());
+                return sizes == array.sizes() ? array : new ArrayInit(array.name(), array.dataType(), sizes);
+            })
+            .toList();
+        statementResult(unchanged(statement.arrays(), arrays) ? statement : new DimStatement(arrays));
+    }
+
+    @Override
+    public void visit(StringConstant expression) {
+        expressionResult(expression);
+    }
+
+    @Override
+    public void visit(FloatConstant expression) {
+        expressionResult(expression);
+    }
+
+    @Override
+    public void visit(Variable expression) {
+        var name = transform(expression.name());
+        expressionResult(name == expression.name() ? expression : new Variable(name));
+    }
+
+    @Override
+    public void visit(FloatNegation expression) {
+        var expr = transformExpression(expression.expr());
+        expressionResult(expr == expression.expr() ? expression : new FloatNegation(expr));
+    }
+
+    @Override
+    public void visit(Equals expression) {
+        binaryExpression(expression, Equals::new);
+    }
+
+    @Override
+    public void visit(NotEquals expression) {
+        binaryExpression(expression, NotEquals::new);
+    }
+
+    @Override
+    public void visit(GreaterThan expression) {
+        binaryExpression(expression, GreaterThan::new);
+    }
+
+    @Override
+    public void visit(GreaterThanEquals expression) {
+        binaryExpression(expression, GreaterThanEquals::new);
+    }
+
+    @Override
+    public void visit(LessThan expression) {
+        binaryExpression(expression, LessThan::new);
+    }
+
+    @Override
+    public void visit(LessThanEquals expression) {
+        binaryExpression(expression, LessThanEquals::new);
+    }
+
+    @Override
+    public void visit(AndExpression expression) {
+        binaryExpression(expression, AndExpression::new);
+    }
+
+    @Override
+    public void visit(OrExpression expression) {
+        binaryExpression(expression, OrExpression::new);
+    }
+
+    @Override
+    public void visit(Addition expression) {
+        binaryExpression(expression, Addition::new);
+    }
+
+    @Override
+    public void visit(FloatSubtraction expression) {
+        binaryExpression(expression, FloatSubtraction::new);
+    }
+
+    @Override
+    public void visit(FloatMultiplication expression) {
+        binaryExpression(expression, FloatMultiplication::new);
+    }
+
+    @Override
+    public void visit(FloatDivision expression) {
+        binaryExpression(expression, FloatDivision::new);
+    }
+
+    @Override
+    public void visit(FloatPower expression) {
+        binaryExpression(expression, FloatPower::new);
+    }
+
+    @Override
+    public void visit(FunctionCall expression) {
+        var args = transformAll(expression.args());
+        expressionResult(args == expression.args() ? expression : new FunctionCall(expression.fn(), args));
+    }
+}
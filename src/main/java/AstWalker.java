@@ -0,0 +1,250 @@
+import ast.Addition;
+import ast.AndExpression;
+import ast.AstVisitor;
+import ast.BinaryExpression;
+import ast.DataStatement;
+import ast.DimStatement;
+import ast.EndStatement;
+import ast.Equals;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatDivision;
+import ast.FloatMultiplication;
+import ast.FloatNegation;
+import ast.FloatPower;
+import ast.FloatSubtraction;
+import ast.ForStatement;
+import ast.FunctionCall;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.IfStatement;
+import ast.InputStatement;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.LetStatement;
+import ast.Line;
+import ast.NextStatement;
+import ast.NotEquals;
+import ast.OnGotoStatement;
+import ast.OrExpression;
+import ast.PrintStatement;
+import ast.ReadStatement;
+import ast.RemarkStatement;
+import ast.RestoreStatement;
+import ast.ReturnStatement;
+import ast.StopStatement;
+import ast.StringConstant;
+import ast.VarName;
+import ast.Variable;
+
+import java.util.List;
+
+/*
+ Base visitor for analyses that only need to look at the AST.  By default
+ every statement and expression is visited and nothing else happens, so
+ subclasses only need to override the visit methods for the nodes they're
+ interested in (calling super to carry on into the node's children).  Every
+ variable, whether it's read or written, goes through visitVarName.
+ */
+public abstract class AstWalker implements AstVisitor {
+
+    @Override
+    public void visit(Line line) {
+        for (var statement: line.statements()) {
+            statement.visit(this);
+        }
+    }
+
+    @Override
+    public void visit(PrintStatement statement) {
+        for (var printable: statement.printables()) {
+            if (printable instanceof Expression expression) {
+                expression.visit(this);
+            }
+        }
+    }
+
+    @Override
+    public void visit(GotoStatement statement) {
+    }
+
+    @Override
+    public void visit(OnGotoStatement statement) {
+        statement.expression().visit(this);
+    }
+
+    @Override
+    public void visit(GoSubStatement statement) {
+    }
+
+    @Override
+    public void visit(ReturnStatement statement) {
+    }
+
+    @Override
+    public void visit(IfStatement statement) {
+        statement.predicate().visit(this);
+        statement.then().visit(this);
+    }
+
+    @Override
+    public void visit(RemarkStatement statement) {
+    }
+
+    @Override
+    public void visit(DataStatement statement) {
+    }
+
+    @Override
+    public void visit(ReadStatement statement) {
+        statement.names().forEach(this::visitVarName);
+    }
+
+    @Override
+    public void visit(RestoreStatement statement) {
+    }
+
+    @Override
+    public void visit(EndStatement statement) {
+    }
+
+    @Override
+    public void visit(StopStatement statement) {
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+        statement.start().visit(this);
+        statement.end().visit(this);
+        if (statement.increment() != null) {
+            statement.increment().visit(this);
+        }
+    }
+
+    @Override
+    public void visit(NextStatement statement) {
+    }
+
+    @Override
+    public void visit(LetStatement statement) {
+        visitVarName(statement.name());
+        statement.expression().visit(this);
+    }
+
+    @Override
+    public void visit(InputStatement statement) {
+        statement.names().forEach(this::visitVarName);
+    }
+
+    @Override
+    public void visit(DimStatement statement) {
+        for (var array: statement.arrays()) {
+            visitAll(array.sizes());
+        }
+    }
+
+    protected void visitVarName(VarName varName) {
+        visitAll(varName.indexes());
+    }
+
+    protected void visitAll(List<Expression> expressions) {
+        for (var expression: expressions) {
+            expression.visit(this);
+        }
+    }
+
+    private void binaryExpression(BinaryExpression expression) {
+        expression.lhs().visit(this);
+        expression.rhs().visit(this);
+    }
+
+    @Override
+    public void visit(StringConstant expression) {
+    }
+
+    @Override
+    public void visit(FloatConstant expression) {
+    }
+
+    @Override
+    public void visit(Variable expression) {
+        visitVarName(expression.name());
+    }
+
+    @Override
+    public void visit(FloatNegation expression) {
+        expression.expr().visit(this);
+    }
+
+    @Override
+    public void visit(Equals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(NotEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(GreaterThan expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(GreaterThanEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(LessThan expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(LessThanEquals expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(AndExpression expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(OrExpression expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(Addition expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatSubtraction expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatMultiplication expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatDivision expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FloatPower expression) {
+        binaryExpression(expression);
+    }
+
+    @Override
+    public void visit(FunctionCall expression) {
+        visitAll(expression.args());
+    }
+}
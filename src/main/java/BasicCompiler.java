@@ -1,8 +1,13 @@
-import java.io.BufferedInputStream;
+import runtime.BasProgram;
+import runtime.BudgetExceededException;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Scanner;
 
 public class BasicCompiler {
 
@@ -10,12 +15,56 @@ public class BasicCompiler {
         String sourceFile = null;
         var run = false;
         var list = false;
+        var timePasses = false;
+        var stats = false;
+        var monitored = false;
+        var parallelParse = false;
+        var stream = false;
+        var hiddenClass = false;
+        var resumable = false;
+        var profiling = JavaASM.Profiling.NONE;
+        Long stepBudget = null;
+        Duration timeLimit = null;
+        var level = OptimisationLevel.O1;
+        var passBudget = Duration.ofSeconds(1);
+        Path cacheDir = null;
+        var cacheSizeMb = 64L;
         for (var arg: args) {
             if (arg.startsWith("-")) {
                 if (arg.equals("--run")) {
                     run = true;
                 } else if (arg.equals("--list")) {
                     list = true;
+                } else if (arg.equals("--hidden-class")) {
+                    hiddenClass = true;
+                } else if (arg.equals("--resumable")) {
+                    resumable = true;
+                } else if (arg.equals("--profile")) {
+                    profiling = JavaASM.Profiling.LINES;
+                } else if (arg.equals("--profile-gosub")) {
+                    profiling = JavaASM.Profiling.LINES_AND_GOSUBS;
+                } else if (arg.equals("--stream")) {
+                    stream = true;
+                } else if (arg.equals("--parallel-parse")) {
+                    parallelParse = true;
+                } else if (arg.equals("--monitor")) {
+                    monitored = true;
+                } else if (arg.equals("--stats")) {
+                    stats = true;
+                } else if (arg.equals("--time-passes")) {
+                    timePasses = true;
+                } else if (arg.startsWith("--pass-budget=")) {
+                    passBudget = Duration.ofMillis(Long.parseLong(arg.substring("--pass-budget=".length())));
+                } else if (arg.startsWith("--step-budget=")) {
+                    stepBudget = Long.parseLong(arg.substring("--step-budget=".length()));
+                } else if (arg.startsWith("--time-limit=")) {
+                    timeLimit = Duration.ofMillis(Long.parseLong(arg.substring("--time-limit=".length())));
+                } else if (arg.startsWith("--cache-dir=")) {
+                    cacheDir = Path.of(arg.substring("--cache-dir=".length()));
+                } else if (arg.startsWith("--cache-size=")) {
+                    cacheSizeMb = Long.parseLong(arg.substring("--cache-size=".length()));
+                } else if (arg.matches("-O[0-9]")) {
+                    level = OptimisationLevel.fromFlag(arg);
                 } else {
                     throw new IllegalArgumentException("Unknown argument: " + arg);
                 }
@@ -27,29 +76,119 @@ public class BasicCompiler {
             }
         }
         
-        var javaAsm = new JavaASM();
-        try (var in = new BufferedInputStream(new FileInputStream(sourceFile))) {
-            var parser = new Parser();
-            var program = parser.parse(new InputStreamReader(in));
-            if (list) {
-                program.visit(new ProgramListing());
-            }
-            program.visit(javaAsm);
-        }
+        var budgeted = stepBudget != null || timeLimit != null;
+        var options = new JavaASM.Options(resumable, budgeted, false, monitored, profiling, Path.of(sourceFile).getFileName().toString());
+        JavaASM javaAsm = null;
+        var parser = new Parser();
+        var source = Tokenizer.mapFile(Path.of(sourceFile));
         var className = new File(sourceFile).getName().replaceAll("[^a-z]", "_");
-        var bytes = javaAsm.generateClass(className);
-        
-        if (run) {
-            var classLoader = new ClassLoader() {
-                @Override
-                protected Class<?> findClass(String name) {
-                    return defineClass(name, bytes, 0, bytes.length);
+        byte[] bytes = null;
+        ClassCache cache = null;
+        String cacheKey = null;
+        if (cacheDir != null && ClassCache.compilerVersion().isEmpty()) {
+            System.err.println("Not caching, as this compiler has no version stamp (it wasn't built by Maven)");
+        } else if (cacheDir != null) {
+            cache = new ClassCache(cacheDir, cacheSizeMb * 1024 * 1024);
+            cacheKey = ClassCache.key(source, className, List.of(
+                level.name(), "stream=" + stream, "resumable=" + resumable, "budgeted=" + budgeted, "monitored=" + monitored, "profiling=" + profiling, "source-file=" + options.sourceFile(), "pass-budget=" + passBudget.toMillis()
+            ));
+            // listing, timing or profiling needs the program to actually be compiled
+            if (!list && !timePasses && !stats && profiling == JavaASM.Profiling.NONE) {
+                bytes = cache.get(cacheKey).orElse(null);
+            }
+        }
+        if (bytes == null) {
+            var tokens = 0;
+            Duration tokenizeTime = null;
+            Duration parseTime = null;
+            Duration typeCheckTime = null;
+            Duration optimiseTime = null;
+            if (stats) {
+                var start = System.nanoTime();
+                tokens = Tokenizer.countTokens(source);
+                tokenizeTime = Duration.ofNanos(System.nanoTime() - start);
+            }
+            if (stream) {
+                // each line is checked as it's parsed, as there's no program to check up front
+                var lines = new StreamedLines(parser, source, level);
+                var listing = list ? new ProgramListing() : null;
+                // lines are listed as their code is generated, rather than parsing them all again
+                javaAsm = new JavaASM(line -> {
+                    if (listing != null) {
+                        listing.visit(line);
+                    }
+                    return lines.typesOf(line);
+                }, options);
+                bytes = javaAsm.generateClass(className, lines);
+            } else {
+                var start = System.nanoTime();
+                var parsed = parallelParse ? parser.parseParallel(source) : parser.parse(source);
+                parseTime = Duration.ofNanos(System.nanoTime() - start);
+                // report any type errors before spending time optimising
+                start = System.nanoTime();
+                var types = TypeChecker.check(parsed);
+                typeCheckTime = Duration.ofNanos(System.nanoTime() - start);
+                var passManager = PassManager.withDefaultPasses(level, passBudget);
+                start = System.nanoTime();
+                var program = passManager.run(parsed);
+                optimiseTime = Duration.ofNanos(System.nanoTime() - start);
+                start = System.nanoTime();
+                types = TypeChecker.afterPasses(parsed, types, program);
+                typeCheckTime = typeCheckTime.plusNanos(System.nanoTime() - start);
+                if (timePasses) {
+                    passManager.getReports().forEach(System.err::println);
+                }
+                if (list) {
+                    program.visit(new ProgramListing());
                 }
-            };
+                javaAsm = new JavaASM(types, options);
+                program.visit(javaAsm);
+                bytes = javaAsm.generateClass(className);
+            }
+            if (stats) {
+                new CompileStats(tokens, tokenizeTime, parseTime, typeCheckTime, optimiseTime, javaAsm.getCodeStats()).print(System.err);
+            }
+            if (cache != null) {
+                cache.put(cacheKey, bytes);
+            }
+        }
 
-            Class<? extends Runnable> clazz = (Class) classLoader.findClass(className);
-            Runnable runnable = clazz.getDeclaredConstructor().newInstance();
-            runnable.run();
+        if (run) {
+            var program = hiddenClass ? CompiledProgram.defineHidden(bytes) : CompiledProgram.define(className, bytes);
+            var in = new Scanner(System.in);
+            var instance = program.newInstance(in, System.out);
+            if (stepBudget != null) {
+                instance.setStepBudget(stepBudget);
+            }
+            if (timeLimit != null) {
+                instance.setDeadline(System.nanoTime() + timeLimit.toNanos());
+            }
+            var exitStatus = 0;
+            // registered for as long as the JVM runs, which is as long as the program does
+            if (monitored) {
+                new ProgramMonitor().register(className, instance);
+            }
+            try {
+                if (resumable) {
+                    runResumable(instance, in);
+                } else {
+                    instance.run();
+                }
+            } catch (BudgetExceededException e) {
+                System.out.flush();
+                System.err.println(e.getMessage());
+                exitStatus = 1;
+            } finally {
+                if (profiling != JavaASM.Profiling.NONE) {
+                    System.out.flush();
+                    var report = new ProfileReport(javaAsm.getSourceLines(), instance.getProfile());
+                    report.print(System.err);
+                    report.writeCsv(Path.of(className + ".profile.csv"));
+                }
+            }
+            if (exitStatus != 0) {
+                System.exit(exitStatus);
+            }
         } else {
             var classFileName = className + ".class";
             try (var out = new FileOutputStream(classFileName)) {
@@ -58,4 +197,13 @@ public class BasicCompiler {
             System.out.println(classFileName);
         }
     }
+
+    private static void runResumable(BasProgram instance, Scanner in) {
+        instance.run();
+        while (instance.isWaitingForInput() && in.hasNextLine()) {
+            instance.offerInput(in.nextLine());
+            instance.run();
+        }
+    }
+
 }
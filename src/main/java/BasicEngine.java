@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ Entry point for embedding the compiler: compiles source into a CompiledProgram
+ that can then be run as often as needed.  Programs are always compiled with
+ a step budget (see BasProgram.setStepBudget) and memory quota (see
+ BasProgram.setMemoryQuota), both unlimited unless set, so a host can stop
+ any that run away.  Recently compiled programs are kept
+ in memory (least recently used are dropped first), so compiling the same source
+ again just returns the existing program.  Safe to use from multiple threads.
+ */
+public class BasicEngine {
+    private static final String CLASS_NAME = "BasicProgram";
+
+    private final OptimisationLevel level;
+    private final Duration passBudget;
+    private final boolean hiddenClasses;
+    private final boolean monitored;
+    private final Map<ProgramKey, CompiledProgram> programs;
+
+    public BasicEngine() {
+        this(OptimisationLevel.O1, 64, true);
+    }
+
+    /*
+     hiddenClasses chooses whether programs are loaded as hidden classes (see
+     CompiledProgram.defineHidden) or each with their own class loader
+     */
+    public BasicEngine(OptimisationLevel level, int maxPrograms, boolean hiddenClasses) {
+        this(level, maxPrograms, hiddenClasses, false);
+    }
+
+    /*
+     monitored compiles programs to keep track of the lines they run, for
+     BasProgram.getStatus and ProgramMonitor
+     */
+    public BasicEngine(OptimisationLevel level, int maxPrograms, boolean hiddenClasses, boolean monitored) {
+        this.level = level;
+        this.hiddenClasses = hiddenClasses;
+        this.monitored = monitored;
+        this.passBudget = Duration.ofSeconds(1);
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ProgramKey, CompiledProgram> eldest) {
+                return size() > maxPrograms;
+            }
+        };
+    }
+
+    public CompiledProgram compile(CharSequence source) throws IOException {
+        return compile(source, false);
+    }
+
+    /*
+     Compiles a program that returns from run() whenever it's waiting for input,
+     rather than blocking (see JavaASM), so lots of sessions waiting on input can
+     be served without a thread each
+     */
+    public CompiledProgram compileResumable(CharSequence source) throws IOException {
+        return compile(source, true);
+    }
+
+    private CompiledProgram compile(CharSequence source, boolean resumable) throws IOException {
+        // the level and other options are fixed for the engine, and the compiler can't change
+        // while it's running, so unlike ClassCache there's no need to hash either into the key
+        var key = new ProgramKey(source.toString(), resumable);
+        synchronized (programs) {
+            var program = programs.get(key);
+            if (program != null) {
+                return program;
+            }
+        }
+        // compiled outside the lock, so a slow compile doesn't hold everyone else up.  If two
+        // threads compile the same source at once the first one to finish wins
+        var compiled = compileClass(source, resumable);
+        var bytes = compiled.bytes();
+        var program = (hiddenClasses ? CompiledProgram.defineHidden(bytes) : CompiledProgram.define(CLASS_NAME, bytes))
+            .withCompileStats(compiled.stats());
+        synchronized (programs) {
+            var existing = programs.putIfAbsent(key, program);
+            return existing != null ? existing : program;
+        }
+    }
+
+    public int getCachedPrograms() {
+        synchronized (programs) {
+            return programs.size();
+        }
+    }
+
+    // tokenizing isn't timed on its own, as that would take an extra pass over the source
+    private CompiledClass compileClass(CharSequence source, boolean resumable) throws IOException {
+        var start = System.nanoTime();
+        var parsed = new Parser().parse(source);
+        var parseTime = Duration.ofNanos(System.nanoTime() - start);
+        start = System.nanoTime();
+        var types = TypeChecker.check(parsed);
+        var typeCheckTime = Duration.ofNanos(System.nanoTime() - start);
+        start = System.nanoTime();
+        var program = PassManager.withDefaultPasses(level, passBudget).run(parsed);
+        var optimiseTime = Duration.ofNanos(System.nanoTime() - start);
+        start = System.nanoTime();
+        types = TypeChecker.afterPasses(parsed, types, program);
+        typeCheckTime = typeCheckTime.plusNanos(System.nanoTime() - start);
+        var javaAsm = new JavaASM(types, JavaASM.Options.DEFAULT
+            .withResumable(resumable)
+            .withBudgeted(true)
+            .withMemoryLimited(true)
+            .withMonitored(monitored));
+        program.visit(javaAsm);
+        var bytes = javaAsm.generateClass(CLASS_NAME);
+        return new CompiledClass(bytes, new CompileStats(0, null, parseTime, typeCheckTime, optimiseTime, javaAsm.getCodeStats()));
+    }
+
+    private record CompiledClass(byte[] bytes, CompileStats stats) {
+
+    }
+
+    private record ProgramKey(String source, boolean resumable) {
+
+    }
+}
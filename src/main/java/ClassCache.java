@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/*
+ On disk cache of compiled classes, so unchanged programs don't need to be
+ compiled again.  Entries are content addressed: the key is a hash of the
+ source, the compiler itself and the options used.  The compiler is identified
+ by the version stamp Maven writes into compiler.properties when it's built (the
+ project and ASM versions and the build time), so every rebuild invalidates
+ everything without having to keep track of which classes decide what gets
+ generated.  A compiler without a stamp (not built by Maven) can't be cached.
+
+ Several compilers can share a cache directory.  Each entry is written to a
+ temporary file and then renamed into place, so readers only ever see complete
+ entries.  The cache is kept under a maximum size by deleting the least
+ recently used entries (reading an entry updates its modified time).
+ */
+public class ClassCache {
+    private static final String SUFFIX = ".class";
+    private static final String VERSION_RESOURCE = "/compiler.properties";
+    private static Optional<String> compilerVersion;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public ClassCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+    }
+
+    public static String key(CharSequence source, String className, List<String> options) {
+        var digest = sha256();
+        digest.update(compilerVersion()
+            .orElseThrow(() -> new IllegalStateException("No compiler version in " + VERSION_RESOURCE))
+            .getBytes(StandardCharsets.UTF_8));
+        for (var option: options) {
+            digest.update(option.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(className.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // empty if the resource is missing or was never filled in (compiled without Maven)
+    public static synchronized Optional<String> compilerVersion() {
+        if (compilerVersion == null) {
+            var properties = new Properties();
+            try (var in = ClassCache.class.getResourceAsStream(VERSION_RESOURCE)) {
+                if (in != null) {
+                    properties.load(in);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            var version = String.join("/",
+                properties.getProperty("version", ""),
+                properties.getProperty("asm", ""),
+                properties.getProperty("build", "")
+            );
+            compilerVersion = !properties.isEmpty() && !version.contains("${")
+                ? Optional.of(version)
+                : Optional.empty();
+        }
+        return compilerVersion;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<byte[]> get(String key) throws IOException {
+        var path = directory.resolve(key + SUFFIX);
+        try {
+            var bytes = Files.readAllBytes(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(bytes);
+        } catch (NoSuchFileException e) {
+            // never cached, or evicted (possibly by another process) since
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, byte[] bytes) throws IOException {
+        var temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, directory.resolve(key + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    private void evict() throws IOException {
+        var entries = new ArrayList<Entry>();
+        var totalBytes = 0L;
+        try (var paths = Files.list(directory)) {
+            for (var path: (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(SUFFIX)) {
+                    continue;
+                }
+                try {
+                    var entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path));
+                    entries.add(entry);
+                    totalBytes += entry.size();
+                } catch (NoSuchFileException e) {
+                    // evicted by someone else
+                }
+            }
+        }
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        for (var entry: entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entry.path());
+            totalBytes -= entry.size();
+        }
+    }
+
+    record Entry(Path path, long size, FileTime lastUsed) {
+
+    }
+}
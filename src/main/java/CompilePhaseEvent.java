@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ Recorded for each phase of compiling a BASIC program.  Begin a phase with
+ begin(), then commit() the event when it's done (which does nothing unless
+ the event is enabled).
+ */
+@Name("basic.CompilePhase")
+@Label("BASIC Compile Phase")
+@Category("BASIC")
+@Description("A phase of compiling a BASIC program")
+public class CompilePhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Class Name")
+    String className;
+
+    public static CompilePhaseEvent begin(String phase, String className) {
+        var event = new CompilePhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.className = className;
+            event.begin();
+        }
+        return event;
+    }
+}
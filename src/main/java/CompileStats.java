@@ -0,0 +1,81 @@
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ How long each phase of compiling a program took and how big the result is,
+ as printed by --stats.  Tokenizing is timed as a separate pass over the
+ source, as the parser tokenizes as it goes, so parseTime includes tokenizing
+ too.  Phases that weren't run (everything but code generation when
+ streaming, or tokenizing on its own in BasicEngine) are null, and tokens is
+ only counted when tokenizing is.
+
+ The warnings are about HotSpot's defaults: methods bigger than
+ HugeMethodLimit bytes are never JIT compiled (unless -XX:-DontCompileHugeMethods
+ is given), ones bigger than FreqInlineSize bytes are never inlined, even when
+ hot, and the class file format stops methods at 64KB.
+ */
+public record CompileStats(
+    int tokens,
+    Duration tokenizeTime,
+    Duration parseTime,
+    Duration typeCheckTime,
+    Duration optimiseTime,
+    JavaASM.CodeStats code
+) {
+    static final int HUGE_METHOD_LIMIT = 8000;
+    static final int FREQ_INLINE_SIZE = 325;
+    static final int MAX_METHOD_SIZE = 65535;
+    private static final double NEAR_LIMIT = 0.75;
+
+    public void print(PrintStream out) {
+        out.printf("%-24s %12s%n", "PHASE", "ms");
+        printTime(out, "tokenize", tokenizeTime);
+        printTime(out, "parse (incl. tokenize)", parseTime);
+        printTime(out, "type-check", typeCheckTime);
+        printTime(out, "optimise", optimiseTime);
+        printTime(out, "codegen", code.codegenTime());
+        printTime(out, "compute frames", code.frameTime());
+        out.println();
+        out.printf("%-24s %12d%n", "tokens", tokens);
+        out.printf("%-24s %12d%n", "lines", code.lines());
+        out.printf("%-24s %12d%n", "statements", code.statements());
+        out.printf("%-24s %12d%n", "run() local slots", code.localSlots());
+        out.printf("%-24s %12d%n", "run() max stack", code.maxStack());
+        out.printf("%-24s %12d%n", "run() bytecode bytes", code.runCodeSize());
+        out.printf("%-24s %12d%n", "constant pool entries", code.constantPoolSize());
+        out.printf("%-24s %12d%n", "class file bytes", code.classSize());
+        warnings().forEach(warning -> out.println("warning: " + warning));
+    }
+
+    public List<String> warnings() {
+        var warnings = new ArrayList<String>();
+        var runSize = code.runCodeSize();
+        if (runSize > MAX_METHOD_SIZE * NEAR_LIMIT) {
+            warnings.add(String.format(Locale.ROOT,
+                "run() is %d bytes, close to the %d byte limit for a method", runSize, MAX_METHOD_SIZE));
+        }
+        if (runSize > HUGE_METHOD_LIMIT) {
+            warnings.add(String.format(Locale.ROOT,
+                "run() is %d bytes, over HugeMethodLimit (%d) so it will only be interpreted unless run with -XX:-DontCompileHugeMethods",
+                runSize, HUGE_METHOD_LIMIT));
+        } else if (runSize > HUGE_METHOD_LIMIT * NEAR_LIMIT) {
+            warnings.add(String.format(Locale.ROOT,
+                "run() is %d bytes, close to HugeMethodLimit (%d) beyond which it won't be JIT compiled",
+                runSize, HUGE_METHOD_LIMIT));
+        }
+        code.methodCodeSizes().forEach((method, size) -> {
+            if (!method.equals("run()V") && size > FREQ_INLINE_SIZE) {
+                warnings.add(String.format(Locale.ROOT,
+                    "%s is %d bytes, over FreqInlineSize (%d) so it won't be inlined", method, size, FREQ_INLINE_SIZE));
+            }
+        });
+        return warnings;
+    }
+
+    private static void printTime(PrintStream out, String phase, Duration time) {
+        out.printf(Locale.ROOT, "%-24s %12s%n", phase, time == null ? "-" : String.format(Locale.ROOT, "%.3f", time.toNanos() / 1_000_000.0));
+    }
+}
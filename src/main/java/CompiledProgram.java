@@ -0,0 +1,129 @@
+import runtime.BasProgram;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Scanner;
+
+/*
+ A compiled program that can be run any number of times, from any number of
+ threads.  The class is loaded once and its constructor looked up once, so
+ creating an instance to run is just a constructor call.  Instances hold the
+ state of a single run and are not shared.
+ */
+public final class CompiledProgram {
+    private final Class<? extends BasProgram> programClass;
+    private final MethodHandle constructor;
+    private final CompileStats compileStats;
+
+    private CompiledProgram(MethodHandles.Lookup lookup, Class<? extends BasProgram> programClass) {
+        this.programClass = programClass;
+        try {
+            this.constructor = lookup
+                .findConstructor(programClass, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(BasProgram.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot construct: " + programClass, e);
+        }
+        this.compileStats = null;
+    }
+
+    private CompiledProgram(CompiledProgram program, CompileStats compileStats) {
+        this.programClass = program.programClass;
+        this.constructor = program.constructor;
+        this.compileStats = compileStats;
+    }
+
+    /*
+     Loads class bytes generated by JavaASM.  Each program gets its own class
+     loader, so it can be unloaded once it's no longer used.
+     */
+    public static CompiledProgram define(String className, byte[] bytes) {
+        var event = CompilePhaseEvent.begin("define-class", className);
+        var classLoader = new ProgramClassLoader(className, bytes);
+        try {
+            var programClass = classLoader.loadClass(className).asSubclass(BasProgram.class);
+            var program = new CompiledProgram(MethodHandles.publicLookup(), programClass);
+            event.commit();
+            return program;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     Loads class bytes generated by JavaASM as a hidden class.  Hidden classes
+     don't need a class loader of their own, are never registered by name and
+     can be unloaded as soon as they are unreachable, so this suits hosts that
+     compile lots of different programs.  As hidden classes are defined in the
+     package of the lookup class (here the unnamed package) the program's class
+     name must not have a package.
+     */
+    public static CompiledProgram defineHidden(byte[] bytes) {
+        var event = CompilePhaseEvent.begin("define-class", null);
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            var program = new CompiledProgram(lookup, lookup.lookupClass().asSubclass(BasProgram.class));
+            event.commit();
+            return program;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Class<? extends BasProgram> getProgramClass() {
+        return programClass;
+    }
+
+    // the same program, along with how compiling it went
+    CompiledProgram withCompileStats(CompileStats compileStats) {
+        return new CompiledProgram(this, compileStats);
+    }
+
+    /*
+     How long each phase of compiling this program took and how big it came
+     out (see CompileStats), or null if it was defined from bytes compiled
+     elsewhere
+     */
+    public CompileStats getCompileStats() {
+        return compileStats;
+    }
+
+    public BasProgram newInstance(Scanner in, PrintStream out) {
+        BasProgram program;
+        try {
+            program = (BasProgram) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        program.setIn(in);
+        program.setOut(out);
+        return program;
+    }
+
+    public void run(Scanner in, PrintStream out) {
+        newInstance(in, out).run();
+    }
+
+    static class ProgramClassLoader extends ClassLoader {
+        private final String className;
+        private final byte[] bytes;
+
+        ProgramClassLoader(String className, byte[] bytes) {
+            super(CompiledProgram.class.getClassLoader());
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
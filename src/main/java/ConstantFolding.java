@@ -0,0 +1,193 @@
+import ast.Addition;
+import ast.AndExpression;
+import ast.BinaryExpression;
+import ast.Equals;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatDivision;
+import ast.FloatMultiplication;
+import ast.FloatNegation;
+import ast.FloatPower;
+import ast.FloatSubtraction;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.NotEquals;
+import ast.OrExpression;
+import ast.Program;
+import ast.StringConstant;
+
+import java.util.function.BinaryOperator;
+import java.util.function.IntPredicate;
+
+/*
+ Evaluates expressions made up only of constants at compile time.  The folded
+ values need to match exactly what the generated byte code would have computed
+ at runtime, so comparisons use the same FCMPG semantics (NaN compares as
+ greater) and booleans use 0 for true and -1 for false.
+ */
+public class ConstantFolding extends AstTransformer implements Pass {
+
+    @Override
+    public String name() {
+        return "constant-folding";
+    }
+
+    @Override
+    public OptimisationLevel level() {
+        return OptimisationLevel.O1;
+    }
+
+    @Override
+    public Program run(Program program) {
+        return transform(program);
+    }
+
+    @Override
+    public void visit(FloatNegation expression) {
+        var expr = transformExpression(expression.expr());
+        if (expr instanceof FloatConstant constant) {
+            expressionResult(new FloatConstant(-constant.constant()));
+        } else {
+            expressionResult(expr == expression.expr() ? expression : new FloatNegation(expr));
+        }
+    }
+
+    @Override
+    public void visit(Addition expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            expressionResult(new FloatConstant(l.constant() + r.constant()));
+        } else if (lhs instanceof StringConstant l && rhs instanceof StringConstant r) {
+            expressionResult(new StringConstant(l.constant().concat(r.constant())));
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, Addition::new));
+        }
+    }
+
+    @Override
+    public void visit(FloatSubtraction expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            expressionResult(new FloatConstant(l.constant() - r.constant()));
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, FloatSubtraction::new));
+        }
+    }
+
+    @Override
+    public void visit(FloatMultiplication expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            expressionResult(new FloatConstant(l.constant() * r.constant()));
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, FloatMultiplication::new));
+        }
+    }
+
+    @Override
+    public void visit(FloatDivision expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            expressionResult(new FloatConstant(l.constant() / r.constant()));
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, FloatDivision::new));
+        }
+    }
+
+    @Override
+    public void visit(FloatPower expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            expressionResult(new FloatConstant((float) Math.pow(l.constant(), r.constant())));
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, FloatPower::new));
+        }
+    }
+
+    @Override
+    public void visit(Equals expression) {
+        comparison(expression, Equals::new, cmp -> cmp == 0);
+    }
+
+    @Override
+    public void visit(NotEquals expression) {
+        comparison(expression, NotEquals::new, cmp -> cmp != 0);
+    }
+
+    @Override
+    public void visit(GreaterThan expression) {
+        comparison(expression, GreaterThan::new, cmp -> cmp > 0);
+    }
+
+    @Override
+    public void visit(GreaterThanEquals expression) {
+        comparison(expression, GreaterThanEquals::new, cmp -> cmp >= 0);
+    }
+
+    @Override
+    public void visit(LessThan expression) {
+        comparison(expression, LessThan::new, cmp -> cmp < 0);
+    }
+
+    @Override
+    public void visit(LessThanEquals expression) {
+        comparison(expression, LessThanEquals::new, cmp -> cmp <= 0);
+    }
+
+    @Override
+    public void visit(AndExpression expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l) {
+            // same short-circuit as the generated code, non-zero lhs is the result
+            expressionResult((int) l.constant() != 0 ? lhs : rhs);
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, AndExpression::new));
+        }
+    }
+
+    @Override
+    public void visit(OrExpression expression) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        if (lhs instanceof FloatConstant l) {
+            expressionResult((int) l.constant() == 0 ? lhs : rhs);
+        } else {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, OrExpression::new));
+        }
+    }
+
+    private void comparison(BinaryExpression expression, BinaryOperator<Expression> rebuild, IntPredicate test) {
+        var lhs = transformExpression(expression.lhs());
+        var rhs = transformExpression(expression.rhs());
+        Integer cmp = null;
+        if (lhs instanceof FloatConstant l && rhs instanceof FloatConstant r) {
+            cmp = fcmpg(l.constant(), r.constant());
+        } else if (lhs instanceof StringConstant l && rhs instanceof StringConstant r) {
+            cmp = l.constant().compareTo(r.constant());
+        }
+        if (cmp == null) {
+            expressionResult(rebuildIfChanged(expression, lhs, rhs, rebuild));
+        } else {
+            expressionResult(new FloatConstant(test.test(cmp) ? 0.0f : -1.0f));
+        }
+    }
+
+    private static int fcmpg(float lhs, float rhs) {
+        if (lhs < rhs) {
+            return -1;
+        }
+        if (lhs == rhs) {
+            return 0;
+        }
+        // greater or NaN
+        return 1;
+    }
+}
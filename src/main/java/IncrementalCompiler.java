@@ -0,0 +1,93 @@
+import ast.Line;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/*
+ Compiler for editors, where a program changes a line at a time.  The parsed
+ (and constant folded) AST of each line and its types are kept with the
+ compilation, so after an edit only the lines that changed are tokenized,
+ parsed and type checked again.  The whole program is a single run() method
+ so that is always generated in full, but that is just a walk over the cached
+ lines.  Optimisations that need the whole program (e.g. loop rotation) are
+ not done.
+
+ As in a BASIC editor, entering a line with an existing number replaces it.
+ */
+public class IncrementalCompiler {
+    private final String className;
+    private final OptimisationLevel level;
+
+    public IncrementalCompiler(String className, OptimisationLevel level) {
+        this.className = className;
+        this.level = level;
+    }
+
+    public Compilation compile(CharSequence source) throws IOException {
+        var lines = new TreeMap<Integer, CompiledLine>();
+        for (var line: new Parser().parse(source).lines()) {
+            lines.put(line.numericLabel(), analyse(line));
+        }
+        return generate(lines, lines.size());
+    }
+
+    /*
+     edits maps line numbers to the new source for that line (including the
+     line number), or null if the line has been deleted
+     */
+    public Compilation recompile(Compilation previous, Map<Integer, String> edits) throws IOException {
+        var lines = new TreeMap<>(previous.lines());
+        var linesParsed = 0;
+        for (var edit: edits.entrySet()) {
+            if (edit.getValue() == null) {
+                lines.remove(edit.getKey());
+            } else {
+                lines.put(edit.getKey(), analyse(parseLine(edit.getKey(), edit.getValue())));
+                linesParsed++;
+            }
+        }
+        return generate(lines, linesParsed);
+    }
+
+    private Line parseLine(int lineNumber, String source) throws IOException {
+        var lines = new Parser().parse(source).lines();
+        if (lines.size() != 1 || lines.get(0).numericLabel() != lineNumber) {
+            throw new IllegalArgumentException("Expected just line " + lineNumber + ", but got: " + source);
+        }
+        return lines.get(0);
+    }
+
+    private CompiledLine analyse(Line line) {
+        // report type errors against the line as it was written
+        var types = TypeChecker.check(line);
+        if (level.includes(OptimisationLevel.O1)) {
+            var folded = new ConstantFolding().transform(line);
+            types = TypeChecker.afterPasses(line, types, folded);
+            line = folded;
+        }
+        return new CompiledLine(line, types);
+    }
+
+    private Compilation generate(NavigableMap<Integer, CompiledLine> lines, int linesParsed) throws IOException {
+        var lineTypes = new IdentityHashMap<Line, TypeChecker.Types>();
+        lines.values().forEach(compiledLine -> lineTypes.put(compiledLine.line(), compiledLine.types()));
+        var javaAsm = new JavaASM(lineTypes::get);
+        var bytes = javaAsm.generateClass(className, lines.values().stream().map(CompiledLine::line).toList());
+        return new Compilation(Collections.unmodifiableNavigableMap(lines), bytes, linesParsed);
+    }
+
+    record CompiledLine(Line line, TypeChecker.Types types) {
+
+    }
+
+    /*
+     linesParsed is how many lines had to be parsed to produce this compilation
+     */
+    public record Compilation(NavigableMap<Integer, CompiledLine> lines, byte[] bytes, int linesParsed) {
+
+    }
+}
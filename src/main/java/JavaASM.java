@@ -47,7 +47,9 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.MethodRemapper;
 import org.objectweb.asm.commons.SimpleRemapper;
 import runtime.BasRuntime;
@@ -55,32 +57,33 @@ import runtime.FunctionDef;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.NavigableSet;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.objectweb.asm.Opcodes.AALOAD;
 import static org.objectweb.asm.Opcodes.AASTORE;
 import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
 import static org.objectweb.asm.Opcodes.ASM4;
+import static org.objectweb.asm.Opcodes.ASM9;
 import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.ATHROW;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
 import static org.objectweb.asm.Opcodes.D2F;
 import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.DUP2;
+import static org.objectweb.asm.Opcodes.DUP_X1;
 import static org.objectweb.asm.Opcodes.F2D;
 import static org.objectweb.asm.Opcodes.F2I;
 import static org.objectweb.asm.Opcodes.FADD;
@@ -94,7 +97,12 @@ import static org.objectweb.asm.Opcodes.FMUL;
 import static org.objectweb.asm.Opcodes.FNEG;
 import static org.objectweb.asm.Opcodes.FSTORE;
 import static org.objectweb.asm.Opcodes.FSUB;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.IALOAD;
+import static org.objectweb.asm.Opcodes.IASTORE;
 import static org.objectweb.asm.Opcodes.GOTO;
+import static org.objectweb.asm.Opcodes.ICONST_1;
 import static org.objectweb.asm.Opcodes.IFEQ;
 import static org.objectweb.asm.Opcodes.IFGE;
 import static org.objectweb.asm.Opcodes.IFGT;
@@ -105,31 +113,87 @@ import static org.objectweb.asm.Opcodes.IF_ICMPNE;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
 import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
 import static org.objectweb.asm.Opcodes.ISUB;
+import static org.objectweb.asm.Opcodes.LADD;
+import static org.objectweb.asm.Opcodes.LALOAD;
+import static org.objectweb.asm.Opcodes.LASTORE;
+import static org.objectweb.asm.Opcodes.LCONST_1;
+import static org.objectweb.asm.Opcodes.NEWARRAY;
 import static org.objectweb.asm.Opcodes.NOP;
 import static org.objectweb.asm.Opcodes.POP;
 import static org.objectweb.asm.Opcodes.PUTFIELD;
 import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.T_FLOAT;
+import static org.objectweb.asm.Opcodes.SWAP;
+import static org.objectweb.asm.Opcodes.T_INT;
 
 public class JavaASM implements AstVisitor {
+    private static final int MAX_LINE_NUMBER = 0xFFFF;
     private String className;
-    private final List<Object> dataConstants = new ArrayList<>();
-    private final NavigableMap<Integer, Integer> dataPositions = new TreeMap<>();
     private final AtomicInteger nextLocalVarIndex = new AtomicInteger(1);
     private final Map<String, Integer> localVarIndexes = new HashMap<>();
     private final Map<String, Label> linesToLabels = new HashMap<>();
     private Label endLabel;
-    private final Set<Label> targetLabels = new HashSet<>();
-    private final List<Label> returnLabels = new ArrayList<>();
-    private final Set<VarName> declaredVariables = new HashSet<>();
-    private final Map<String, ArrayDim> dimensionedArrays = new HashMap<>();
+    private Label exitLabel;
+    private Label[] returnLabels;
+    private Label returnDispatchLabel;
+    private ProgramDeclarations declarations;
     private final AtomicInteger nextForNum = new AtomicInteger(1);
     private final Deque<OpenForStatement> openForStatements = new ArrayDeque<>();
-    private final List<Consumer<MethodVisitor>> methodCallbacks = new ArrayList<>();
-    private final NavigableSet<Line> lines = new TreeSet<>(Comparator.comparing(Line::numericLabel));
+    private Iterable<Line> lines = List.of();
     private Line currentLine;
     private MethodVisitor currentMethodVisitor;
+    private final Function<Line, TypeChecker.Types> lineTypes;
+    private TypeChecker.Types types;
+    private final Options options;
+    private final List<Label> resumeLabels = new ArrayList<>();
+    private final List<SavedLocal> savedLocals = new ArrayList<>();
+    private final List<ProfileReport.SourceLine> sourceLines = new ArrayList<>();
+    private Label suspendLabel;
+    private final Map<String, Label> methodEnds = new LinkedHashMap<>();
+    private Duration codegenTime;
+    private Duration frameTime;
+    private int lineCount;
+    private int statementCount;
+    private CodeStats codeStats;
+    private Label resumeLabel;
+
+    public JavaASM() {
+        this(TypeChecker::check);
+    }
+
+    /*
+     lineTypes gives the types for each line, which lets the caller reuse type
+     information it has already worked out (see IncrementalCompiler).  It's
+     called once for each line, just before its code is generated
+     */
+    public JavaASM(Function<Line, TypeChecker.Types> lineTypes) {
+        this(lineTypes, Options.DEFAULT);
+    }
+
+    public JavaASM(Function<Line, TypeChecker.Types> lineTypes, Options options) {
+        this.lineTypes = lineTypes;
+        this.options = options;
+    }
+
+    // types are the whole program's, from TypeChecker.check(Program), so no line is checked again
+    public JavaASM(TypeChecker.Types types, Options options) {
+        this(line -> types, options);
+    }
 
     public byte[] generateClass(String className) throws IOException {
+        return generateClass(className, lines);
+    }
+
+    /*
+     Generates the class from lines (in line number order), which are iterated
+     twice: once for a pre-pass to find out which lines are jumped to, which
+     variables need initialising etc. (see ProgramDeclarations) and then again
+     to generate the code for each line in turn.  Code is written out as each
+     line is visited, so if the lines are parsed as they are iterated (see
+     Parser.streamLines) the whole program never needs to be in memory at once,
+     at the cost of parsing it twice.
+     */
+    public byte[] generateClass(String className, Iterable<Line> lines) throws IOException {
         this.className = className;
         SimpleRemapper remapper = new SimpleRemapper(BasRuntime.class.getName().replace('.', '/'), className);
         ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
@@ -138,118 +202,399 @@ public class JavaASM implements AstVisitor {
             @Override
             public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
                 super.visit(version, access, className, signature, superName, interfaces);
+                var sourceFile = options.sourceFile() != null ? options.sourceFile() : className + ".bas";
+                super.visitSource(sourceFile, null);
             }
 
             @Override
             public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
                 var methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+                var methodEnd = new Label();
+                methodEnds.put(name + descriptor, methodEnd);
                 if ("run".equals(name)) {
                     currentMethodVisitor = methodVisitor;
                     methodVisitor.visitCode();
-                    storeDataConstants(methodVisitor);
-                    var defaultArrays = checkForDefaultArrays();
-                    initLocalVars(methodVisitor);
-                    initDefaultArrays(methodVisitor, defaultArrays);
-                    for (var callback: methodCallbacks) {
-                        callback.accept(methodVisitor);
-                    }
+                    var start = System.nanoTime();
+                    generateRun(methodVisitor, lines);
+                    methodVisitor.visitLabel(methodEnd);
+                    codegenTime = Duration.ofNanos(System.nanoTime() - start);
+                    // this is where ClassWriter works out the max stack and frames
+                    start = System.nanoTime();
+                    methodVisitor.visitMaxs(0, 0);
+                    frameTime = Duration.ofNanos(System.nanoTime() - start);
                     methodVisitor.visitEnd();
-                } else {
-                    return new MethodRemapper(methodVisitor, remapper);
+                    // the template's own (empty) run() isn't wanted
+                    return null;
                 }
-                return methodVisitor;
+                return new MethodRemapper(new MethodVisitor(ASM9, methodVisitor) {
+                    @Override
+                    public void visitMaxs(int maxStack, int maxLocals) {
+                        // marks the end of the code, so its size is known once written
+                        super.visitLabel(methodEnd);
+                        super.visitMaxs(maxStack, maxLocals);
+                    }
+                }, remapper);
             }
         };
 
+        var event = CompilePhaseEvent.begin("codegen", className);
         try (var in = getBasRuntimeClassBytes()) {
             ClassReader reader = new ClassReader(in);
-            reader.accept(classVisitor, 0);
-            return classWriter.toByteArray();
+            // the runtime's own debug info (BasRuntime.java line numbers etc.) would only
+            // be misleading once the class claims to come from the BASIC source
+            reader.accept(classVisitor, ClassReader.SKIP_DEBUG);
+            byte[] bytes;
+            try {
+                bytes = classWriter.toByteArray();
+            } catch (MethodTooLargeException e) {
+                // the whole program is one run() method, which the JVM limits to 64KB of bytecode
+                throw new IllegalStateException("Program too large to compile: run() needs "
+                    + e.getCodeSize() + " bytes of code, the most a method can have is 65535", e);
+            }
+            event.commit();
+            codeStats = codeStats(bytes);
+            return bytes;
         }
     }
 
+    /*
+     Statistics about the last class generated: how long generating run() and
+     then computing its frames took and how big the result is
+     */
+    public CodeStats getCodeStats() {
+        return codeStats;
+    }
+
+    private CodeStats codeStats(byte[] bytes) {
+        var reader = new ClassReader(bytes);
+        var runMaxs = new int[2];
+        reader.accept(new ClassVisitor(ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!"run".equals(name)) {
+                    return null;
+                }
+                return new MethodVisitor(ASM9) {
+                    @Override
+                    public void visitMaxs(int maxStack, int maxLocals) {
+                        runMaxs[0] = maxStack;
+                        runMaxs[1] = maxLocals;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_FRAMES);
+        var methodSizes = new LinkedHashMap<String, Integer>();
+        methodEnds.forEach((method, end) -> methodSizes.put(method, end.getOffset()));
+        return new CodeStats(
+            codegenTime,
+            frameTime,
+            lineCount,
+            statementCount,
+            runMaxs[1],
+            runMaxs[0],
+            methodSizes.get("run()V"),
+            reader.getItemCount(),
+            bytes.length,
+            Collections.unmodifiableMap(methodSizes)
+        );
+    }
+
     private InputStream getBasRuntimeClassBytes() {
         String className = BasRuntime.class.getName();
         String classAsPath = className.replace('.', '/') + ".class";
         return BasRuntime.class.getClassLoader().getResourceAsStream(classAsPath);
     }
 
-    @Override
-    public void visit(Program program) {
-        lines.clear();
-        lines.addAll(program.lines());
+    private void generateRun(MethodVisitor methodVisitor, Iterable<Line> lines) {
+        declarations = ProgramDeclarations.of(lines);
         endLabel = new Label();
-        for (var line: program.lines()) {
-            var label = new Label();
-            linesToLabels.put(line.label(), label);
+        exitLabel = new Label();
+        /*
+         endRun() is called on the way out of run(), however that happens.
+         Every return jumps to the one exit, after the end of the protected
+         range, so an exception from endRun() itself doesn't call it again
+         */
+        var startLabel = new Label();
+        var finishLabel = new Label();
+        var exceptionLabel = new Label();
+        methodVisitor.visitTryCatchBlock(startLabel, finishLabel, exceptionLabel, null);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "startRun",
+            "()V");
+        methodVisitor.visitLabel(startLabel);
+        // only lines that are jumped to need a label
+        for (var label: declarations.getTargetedLines()) {
+            linesToLabels.put(label, new Label());
+        }
+        returnLabels = declarations.getReturnLines().stream()
+            .map(label -> label == null ? endLabel : linesToLabels.get(label))
+            .toArray(Label[]::new);
+        returnDispatchLabel = null;
+        if (options.resumable()) {
+            suspendLabel = new Label();
+            resumeLabel = new Label();
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, className, "resumePoint", "I");
+            methodVisitor.visitJumpInsn(IFNE, resumeLabel);
+        }
+        if (options.profiling() != Profiling.NONE) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitLdcInsn(declarations.getLineCount());
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                className,
+                "initProfile",
+                "(I)V");
         }
-        AstVisitor.super.visit(program);
-        addCallback(methodVisitor -> {
-            visitLabelIfTargeted(methodVisitor, endLabel);
-            methodVisitor.visitInsn(RETURN);
-        });
+        storeDataConstants(methodVisitor);
+        initLocalVars(methodVisitor);
+        initDefaultArrays(methodVisitor);
+        if (options.resumable()) {
+            initResumableLocals(methodVisitor);
+        }
+        for (var line: lines) {
+            types = lineTypes.apply(line);
+            visit(line);
+        }
+        if (declarations.isEndTargeted()) {
+            methodVisitor.visitLabel(endLabel);
+        }
+        emitReturn(methodVisitor);
+        if (returnDispatchLabel != null) {
+            generateReturnDispatch(methodVisitor);
+        }
+        if (options.resumable()) {
+            generateSuspend(methodVisitor);
+            generateResume(methodVisitor);
+        }
+        methodVisitor.visitLabel(finishLabel);
+        methodVisitor.visitLabel(exitLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "endRun",
+            "()V");
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitLabel(exceptionLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "endRun",
+            "()V");
+        methodVisitor.visitInsn(ATHROW);
+    }
+
+    private void emitReturn(MethodVisitor methodVisitor) {
+        methodVisitor.visitJumpInsn(GOTO, exitLabel);
+    }
+
+    /*
+     Every local has to hold a value wherever the program might suspend, so
+     this initialises the ones that otherwise only get a value part way
+     through (DIM'd arrays), then records all of them as needing to be saved.
+     */
+    private void initResumableLocals(MethodVisitor methodVisitor) {
+        var arrays = new LinkedHashMap<String, ArrayDim>();
+        declarations.getArrays().forEach(arrayDim -> arrays.put(arrayDim.name(), arrayDim));
+        for (var arrayDim: declarations.getDimensionedArrays()) {
+            if (arrays.putIfAbsent(arrayDim.name(), arrayDim) == null) {
+                var sizes = Collections.nCopies(arrayDim.dimensions(), 0.0f).stream()
+                    .map(FloatConstant::new)
+                    .toList();
+                visitArrayCreate(methodVisitor, arrayDim, sizes);
+            }
+        }
+        for (var forNum = 1; forNum <= declarations.getForLoops(); forNum++) {
+            for (var name: List.of("#FOR#END#" + forNum, "#FOR#INC#" + forNum)) {
+                savedLocals.add(new SavedLocal(getLocalVarIndex(name), Float.TYPE.descriptorString()));
+            }
+        }
+        for (var var: declarations.getVariables()) {
+            savedLocals.add(new SavedLocal(getLocalVarIndex(var), toDescriptorString(var.dataType())));
+        }
+        for (var arrayDim: arrays.values()) {
+            var descriptor = "[".repeat(arrayDim.dimensions()) + toDescriptorString(arrayDim.dataType());
+            savedLocals.add(new SavedLocal(getLocalVarIndex(arrayDim.name()), descriptor));
+        }
+    }
+
+    // the INPUTs jump here (having set resumePoint) to save the locals and return
+    private void generateSuspend(MethodVisitor methodVisitor) {
+        var floats = savedLocals.stream().filter(SavedLocal::isFloat).toList();
+        var objects = savedLocals.stream().filter(local -> !local.isFloat()).toList();
+        methodVisitor.visitLabel(suspendLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(floats.size());
+        methodVisitor.visitIntInsn(NEWARRAY, T_FLOAT);
+        for (var i = 0; i < floats.size(); i++) {
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitLdcInsn(i);
+            methodVisitor.visitVarInsn(FLOAD, floats.get(i).index());
+            methodVisitor.visitInsn(FASTORE);
+        }
+        methodVisitor.visitFieldInsn(PUTFIELD, className, "savedFloats", "[F");
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(objects.size());
+        methodVisitor.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        for (var i = 0; i < objects.size(); i++) {
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitLdcInsn(i);
+            methodVisitor.visitVarInsn(ALOAD, objects.get(i).index());
+            methodVisitor.visitInsn(AASTORE);
+        }
+        methodVisitor.visitFieldInsn(PUTFIELD, className, "savedObjects", "[" + Object.class.descriptorString());
+        emitReturn(methodVisitor);
+    }
+
+    // run() jumps here when resumePoint is set, to restore the locals and carry on from that INPUT
+    private void generateResume(MethodVisitor methodVisitor) {
+        var floats = savedLocals.stream().filter(SavedLocal::isFloat).toList();
+        var objects = savedLocals.stream().filter(local -> !local.isFloat()).toList();
+        methodVisitor.visitLabel(resumeLabel);
+        for (var i = 0; i < floats.size(); i++) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, className, "savedFloats", "[F");
+            methodVisitor.visitLdcInsn(i);
+            methodVisitor.visitInsn(FALOAD);
+            methodVisitor.visitVarInsn(FSTORE, floats.get(i).index());
+        }
+        for (var i = 0; i < objects.size(); i++) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitFieldInsn(GETFIELD, className, "savedObjects", "[" + Object.class.descriptorString());
+            methodVisitor.visitLdcInsn(i);
+            methodVisitor.visitInsn(AALOAD);
+            methodVisitor.visitTypeInsn(CHECKCAST, objects.get(i).internalName());
+            methodVisitor.visitVarInsn(ASTORE, objects.get(i).index());
+        }
+        var defaultLabel = new Label();
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "takeResumePoint",
+            "()I");
+        if (resumeLabels.isEmpty()) {
+            methodVisitor.visitInsn(POP);
+        } else {
+            methodVisitor.visitTableSwitchInsn(1, resumeLabels.size(), defaultLabel, resumeLabels.toArray(Label[]::new));
+        }
+        methodVisitor.visitLabel(defaultLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn("Cannot resume program");
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "runtimeError",
+            "(Ljava/lang/String;)V");
+        emitReturn(methodVisitor);
+    }
+
+    @Override
+    public void visit(Program program) {
+        lines = program.lines();
     }
 
     @Override
     public void visit(Line line) {
         currentLine = line;
-        addCallback(methodVisitor -> {
-            currentLine = line;
-            var label = linesToLabels.get(line.label());
-            visitLabelIfTargeted(methodVisitor, label);
-        });
+        lineCount++;
+        statementCount += line.statements().size();
+        var label = linesToLabels.get(line.label());
+        if (label == null) {
+            label = new Label();
+        }
+        currentMethodVisitor.visitLabel(label);
+        // so stack traces and profilers show BASIC line numbers (which have to fit in a u2)
+        if (line.numericLabel() <= MAX_LINE_NUMBER) {
+            currentMethodVisitor.visitLineNumber(line.numericLabel(), label);
+        }
+        if (options.monitored()) {
+            trackLine(currentMethodVisitor, line);
+        }
+        if (options.profiling() != Profiling.NONE) {
+            countLine(currentMethodVisitor, line);
+        }
         for (var statement: line.statements()) {
             statement.visit(this);
         }
     }
 
+    public List<ProfileReport.SourceLine> getSourceLines() {
+        return Collections.unmodifiableList(sourceLines);
+    }
+
+    // through a method, as other threads read what it writes (see BasRuntime.getStatus)
+    private void trackLine(MethodVisitor methodVisitor, Line line) {
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(line.numericLabel());
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "trackLine",
+            "(I)V");
+    }
+
+    private void countLine(MethodVisitor methodVisitor, Line line) {
+        var lineIndex = declarations.getLineIndex(line.label());
+        if (lineIndex == sourceLines.size()) {
+            sourceLines.add(new ProfileReport.SourceLine(line.label(), ProgramListing.listing(line)));
+        }
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitFieldInsn(GETFIELD, className, "lineCounts", "[J");
+        methodVisitor.visitLdcInsn(lineIndex);
+        methodVisitor.visitInsn(DUP2);
+        methodVisitor.visitInsn(LALOAD);
+        methodVisitor.visitInsn(LCONST_1);
+        methodVisitor.visitInsn(LADD);
+        methodVisitor.visitInsn(LASTORE);
+    }
+
     @Override
     public void visit(PrintStatement statement) {
-        addCallback(methodVisitor -> {
-            Printable lastPrintable = null;
-            for (var printable: statement.printables()) {
-                if (printable == PrintSeperator.SPACE) {
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitLdcInsn(" ");
-                    var paramDescriptor = toDescriptorString(DataType.STRING);
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "print",
-                            String.format("(%s)V", paramDescriptor));
-                } else if (printable == PrintSeperator.ZONE) {
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+        var methodVisitor = currentMethodVisitor;
+        Printable lastPrintable = null;
+        for (var printable: statement.printables()) {
+            if (printable == PrintSeperator.SPACE) {
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitLdcInsn(" ");
+                var paramDescriptor = toDescriptorString(DataType.STRING);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
                         className,
-                        "nextPrintZone",
-                        "()V");
-                } else if (printable != PrintSeperator.NONE) {
-                    var expression = (Expression) printable;
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    expression.visit(this);
-                    var paramDescriptor = toDescriptorString(expression.getDataType());
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "print",
-                            String.format("(%s)V", paramDescriptor));
-                }
-                lastPrintable = printable;
-            }
-            if (lastPrintable != PrintSeperator.NONE && lastPrintable != PrintSeperator.ZONE) {
+                        "print",
+                        String.format("(%s)V", paramDescriptor));
+            } else if (printable == PrintSeperator.ZONE) {
                 methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                    className,
+                    "nextPrintZone",
+                    "()V");
+            } else if (printable != PrintSeperator.NONE) {
+                var expression = (Expression) printable;
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                expression.visit(this);
+                var paramDescriptor = toDescriptorString(types.of(expression));
                 methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
                         className,
-                        "println",
-                        "()V");
+                        "print",
+                        String.format("(%s)V", paramDescriptor));
             }
-        });
+            lastPrintable = printable;
+        }
+        if (lastPrintable != PrintSeperator.NONE && lastPrintable != PrintSeperator.ZONE) {
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                    className,
+                    "println",
+                    "()V");
+        }
     }
 
     @Override
     public void visit(GotoStatement statement) {
         var label = targetLineLabel(statement.destinationLabel());
-        addCallback(methodVisitor -> {
-            methodVisitor.visitJumpInsn(GOTO, label);
-        });
+        var methodVisitor = currentMethodVisitor;
+        if (isBackwards(statement.destinationLabel())) {
+            countStep(methodVisitor);
+        }
+        methodVisitor.visitJumpInsn(GOTO, label);
     }
 
     @Override
@@ -258,48 +603,71 @@ public class JavaASM implements AstVisitor {
         // to work with newer Java veersions, so we'll fake it
         // by pushing an int on the stack and generate a switch
         // to go back to the correction calling location
-        var returnLabel = targetNextLineLabel(currentLine);
-        var returnIndex = returnLabels.size();
-        returnLabels.add(returnLabel);
+        var returnIndex = declarations.getReturnIndex(currentLine.label());
         var destinationLabel = targetLineLabel(statement.destinationLabel());
-        if (destinationLabel == null) {
-            throw new IllegalStateException("Unknown destination label: " + statement);
+        var methodVisitor = currentMethodVisitor;
+        if (isBackwards(statement.destinationLabel())) {
+            countStep(methodVisitor);
         }
-        addCallback(methodVisitor -> {
+        if (options.profiling() == Profiling.LINES_AND_GOSUBS) {
             methodVisitor.visitVarInsn(ALOAD, 0);
-            methodVisitor.visitLdcInsn(returnIndex);
+            methodVisitor.visitLdcInsn(declarations.getLineIndex(statement.destinationLabel()));
             methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
                 className,
-                "pushReturnAddress",
+                "enterGosub",
                 "(I)V");
-            methodVisitor.visitJumpInsn(GOTO, destinationLabel);
-        });
+        }
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(returnIndex);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "pushReturnAddress",
+            "(I)V");
+        methodVisitor.visitJumpInsn(GOTO, destinationLabel);
     }
 
     @Override
     public void visit(ReturnStatement statement) {
-        addCallback(methodVisitor -> {
-            if (returnLabels.isEmpty()) {
-                throw new IllegalStateException("No matching GOSUB for RETURN");
-            }
+        var methodVisitor = currentMethodVisitor;
+        if (returnLabels.length == 0) {
+            throw new IllegalStateException("No matching GOSUB for RETURN");
+        }
+        countStep(methodVisitor);
+        if (options.profiling() == Profiling.LINES_AND_GOSUBS) {
             methodVisitor.visitVarInsn(ALOAD, 0);
             methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
                 className,
-                "popReturnAddress",
-                "()I");
-            var defaultLabel = newTargettedLabel();
-            var keys = IntStream.range(0, returnLabels.size())
-                .toArray();
-            var labels = returnLabels.toArray(Label[]::new);
-            methodVisitor.visitLookupSwitchInsn(defaultLabel, keys, labels);
-            methodVisitor.visitLabel(defaultLabel);
-            methodVisitor.visitVarInsn(ALOAD, 0);
-            methodVisitor.visitLdcInsn("Calling GOSUB not found");
-            methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                    className,
-                    "runtimeError",
-                    "(Ljava/lang/String;)V");
-        });
+                "exitGosub",
+                "()V");
+        }
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "popReturnAddress",
+            "()I");
+        if (returnDispatchLabel == null) {
+            returnDispatchLabel = new Label();
+        }
+        methodVisitor.visitJumpInsn(GOTO, returnDispatchLabel);
+    }
+
+    /*
+     The RETURNs all jump here with the return address on the stack, rather
+     than each having its own switch over every line a GOSUB returns to, which
+     would make the code grow with GOSUBs times RETURNs
+     */
+    private void generateReturnDispatch(MethodVisitor methodVisitor) {
+        var defaultLabel = new Label();
+        methodVisitor.visitLabel(returnDispatchLabel);
+        methodVisitor.visitTableSwitchInsn(0, returnLabels.length - 1, defaultLabel, returnLabels);
+        methodVisitor.visitLabel(defaultLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn("Calling GOSUB not found");
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                className,
+                "runtimeError",
+                "(Ljava/lang/String;)V");
+        emitReturn(methodVisitor);
     }
 
     @Override
@@ -307,138 +675,163 @@ public class JavaASM implements AstVisitor {
         var labels = statement.destinationLabels().stream()
             .map(this::targetLineLabel)
             .toArray(Label[]::new);
-        var defaultLabel = newTargettedLabel();
-        addCallback(methodVisitor -> {
-            statement.expression().visit(this);
-            methodVisitor.visitInsn(F2I);
-            var keys = IntStream.range(0, labels.length)
-                .map(i -> i + 1)
-                .toArray();
-            methodVisitor.visitLookupSwitchInsn(defaultLabel, keys, labels);
-            methodVisitor.visitLabel(defaultLabel);
-            methodVisitor.visitInsn(NOP);
-        });
+        var defaultLabel = new Label();
+        var methodVisitor = currentMethodVisitor;
+        if (statement.destinationLabels().stream().anyMatch(this::isBackwards)) {
+            countStep(methodVisitor);
+        }
+        statement.expression().visit(this);
+        methodVisitor.visitInsn(F2I);
+        var keys = IntStream.range(0, labels.length)
+            .map(i -> i + 1)
+            .toArray();
+        methodVisitor.visitLookupSwitchInsn(defaultLabel, keys, labels);
+        methodVisitor.visitLabel(defaultLabel);
+        methodVisitor.visitInsn(NOP);
     }
 
     @Override
     public void visit(IfStatement statement) {
-        var falseLable = newTargettedLabel();
-        addCallback(methodVisitor -> {
-            statement.predicate().visit(this);
-            methodVisitor.visitInsn(F2I);
-            // NB logic is inverted 0 = true and -1 = false
-            methodVisitor.visitJumpInsn(IFNE, falseLable);
-            statement.then().visit(this);
-            methodVisitor.visitLabel(falseLable);
-            methodVisitor.visitInsn(NOP);
-        });
+        var falseLable = new Label();
+        var methodVisitor = currentMethodVisitor;
+        statement.predicate().visit(this);
+        methodVisitor.visitInsn(F2I);
+        // NB logic is inverted 0 = true and -1 = false
+        methodVisitor.visitJumpInsn(IFNE, falseLable);
+        statement.then().visit(this);
+        methodVisitor.visitLabel(falseLable);
+        methodVisitor.visitInsn(NOP);
     }
 
     @Override
     public void visit(DataStatement statement) {
-        dataPositions.put(currentLine.numericLabel(), dataConstants.size());
-        dataConstants.addAll(statement.constants());
+        // the constants themselves are all stored at the start by storeDataConstants()
         // this is purely here in case we have code that tries to jump to this
-        addCallback(methodVisitor -> {
-            methodVisitor.visitInsn(NOP);
-        });
+        currentMethodVisitor.visitInsn(NOP);
     }
 
     @Override
     public void visit(ReadStatement statement) {
         for (var varName: statement.names()) {
-            createLocalVarIndex(varName);
-            addCallback(methodVisitor -> {
-                varStore(methodVisitor, varName, () -> {
-                    var dataType = varName.dataType();
-                    var returnType = toDescriptorString(dataType);
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "read" + dataType,
-                            "()" + returnType);
-                });
+            var methodVisitor = currentMethodVisitor;
+            varStore(methodVisitor, varName, () -> {
+                var dataType = varName.dataType();
+                var returnType = toDescriptorString(dataType);
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                        className,
+                        "read" + dataType,
+                        "()" + returnType);
             });
         }
     }
 
     @Override
     public void visit(RestoreStatement statement) {
-        addCallback(methodVisitor -> {
-            int nextDataPtr = 0;
-            if (statement.label() != null) {
-                var nextPositions = dataPositions.tailMap(Integer.parseInt(statement.label()));
-                if (nextPositions.isEmpty()) {
-                    throw new IllegalStateException("Could not find data after: " + statement.label());
-                }
-                nextDataPtr = nextPositions.get(nextPositions.firstKey());
+        var methodVisitor = currentMethodVisitor;
+        int nextDataPtr = 0;
+        if (statement.label() != null) {
+            var nextPositions = declarations.getDataPositions().tailMap(Integer.parseInt(statement.label()));
+            if (nextPositions.isEmpty()) {
+                throw new IllegalStateException("Could not find data after: " + statement.label());
             }
-            methodVisitor.visitVarInsn(ALOAD, 0);
-            methodVisitor.visitLdcInsn(nextDataPtr);
-            methodVisitor.visitFieldInsn(PUTFIELD, className, "nextDataPtr", "I");
-        });
+            nextDataPtr = nextPositions.get(nextPositions.firstKey());
+        }
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(nextDataPtr);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "restore",
+            "(I)V");
     }
 
     @Override
     public void visit(ForStatement statement) {
-        var continueLabel = newTargettedLabel();
+        var continueLabel = new Label();
         var forNum = nextForNum.getAndIncrement();
         var varIndex = getLocalVarIndex(statement.varname());
         var endIndex = getLocalVarIndex("#FOR#END#" + forNum);
         var incIndex = getLocalVarIndex("#FOR#INC#" + forNum);
-        openForStatements.add(new OpenForStatement(continueLabel, statement, varIndex, endIndex, incIndex));
-        addCallback(methodVisitor -> {
-            statement.start().visit(this);
-            methodVisitor.visitVarInsn(FSTORE, varIndex);
-            statement.end().visit(this);
-            methodVisitor.visitVarInsn(FSTORE, endIndex);
-            if (statement.increment() != null) {
-                statement.increment().visit(this);
-            } else {
-                methodVisitor.visitLdcInsn(1.0f);
-            }
-            methodVisitor.visitVarInsn(FSTORE, incIndex);
-            visitLabelIfTargeted(methodVisitor, continueLabel);
-            methodVisitor.visitInsn(NOP);
-        });
+        // innermost first, so a NEXT without a variable closes the innermost loop
+        openForStatements.push(new OpenForStatement(continueLabel, statement, varIndex, endIndex, incIndex));
+        var methodVisitor = currentMethodVisitor;
+        statement.start().visit(this);
+        methodVisitor.visitVarInsn(FSTORE, varIndex);
+        statement.end().visit(this);
+        methodVisitor.visitVarInsn(FSTORE, endIndex);
+        if (statement.increment() != null) {
+            statement.increment().visit(this);
+        } else {
+            methodVisitor.visitLdcInsn(1.0f);
+        }
+        methodVisitor.visitVarInsn(FSTORE, incIndex);
+        methodVisitor.visitLabel(continueLabel);
+        methodVisitor.visitInsn(NOP);
     }
 
     @Override
     public void visit(NextStatement statement) {
         var openFors = findMatchingForStatements(statement);
         for (var openFor: openFors) {
-            addCallback(methodVisitor -> {
-                // add increment to loop
-                methodVisitor.visitVarInsn(FLOAD, openFor.varIndex());
-                methodVisitor.visitVarInsn(FLOAD, openFor.incIndex());
-                methodVisitor.visitInsn(FADD);
-                methodVisitor.visitVarInsn(FSTORE, openFor.varIndex());
-                // see which direction the loop is going
-                methodVisitor.visitVarInsn(FLOAD, openFor.incIndex());
-                methodVisitor.visitLdcInsn(0.0f);
-                methodVisitor.visitInsn(FCMPG);
-                // then compare end vs var
-                methodVisitor.visitVarInsn(FLOAD, openFor.varIndex());
-                methodVisitor.visitVarInsn(FLOAD, openFor.endIndex());
-                methodVisitor.visitInsn(FCMPG);
-                // then see if the direction of the comparisons are the same or not
-                methodVisitor.visitJumpInsn(IF_ICMPNE, openFor.continueLabel());
-            });
+            var methodVisitor = currentMethodVisitor;
+            countStep(methodVisitor);
+            // add increment to loop
+            methodVisitor.visitVarInsn(FLOAD, openFor.varIndex());
+            methodVisitor.visitVarInsn(FLOAD, openFor.incIndex());
+            methodVisitor.visitInsn(FADD);
+            methodVisitor.visitVarInsn(FSTORE, openFor.varIndex());
+            // see which direction the loop is going
+            methodVisitor.visitVarInsn(FLOAD, openFor.incIndex());
+            methodVisitor.visitLdcInsn(0.0f);
+            methodVisitor.visitInsn(FCMPG);
+            // then compare end vs var
+            methodVisitor.visitVarInsn(FLOAD, openFor.varIndex());
+            methodVisitor.visitVarInsn(FLOAD, openFor.endIndex());
+            methodVisitor.visitInsn(FCMPG);
+            // then see if the direction of the comparisons are the same or not
+            methodVisitor.visitJumpInsn(IF_ICMPNE, openFor.continueLabel());
         }
     }
 
     @Override
     public void visit(EndStatement statement) {
-        addCallback(methodVisitor -> {
-            methodVisitor.visitInsn(RETURN);
-        });
+        emitReturn(currentMethodVisitor);
     }
 
     @Override
     public void visit(StopStatement statement) {
-        addCallback(methodVisitor -> {
-            methodVisitor.visitInsn(RETURN);
-        });
+        emitReturn(currentMethodVisitor);
+    }
+
+    private boolean isBackwards(String destinationLabel) {
+        return Integer.parseInt(destinationLabel) <= currentLine.numericLabel();
+    }
+
+    /*
+     With a step budget, every backward jump (the only way a program can run
+     for ever) counts down a field and only calls checkBudget(), to check the
+     budget and deadline properly, every few thousand steps
+     */
+    private void countStep(MethodVisitor methodVisitor) {
+        if (!options.budgeted()) {
+            return;
+        }
+        var withinBudgetLabel = new Label();
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitInsn(DUP);
+        methodVisitor.visitFieldInsn(GETFIELD, className, "stepCountdown", "I");
+        methodVisitor.visitInsn(ICONST_1);
+        methodVisitor.visitInsn(ISUB);
+        methodVisitor.visitInsn(DUP_X1);
+        methodVisitor.visitFieldInsn(PUTFIELD, className, "stepCountdown", "I");
+        methodVisitor.visitJumpInsn(IFGE, withinBudgetLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "checkBudget",
+            "()V");
+        methodVisitor.visitLabel(withinBudgetLabel);
+        methodVisitor.visitInsn(NOP);
     }
 
     private List<OpenForStatement> findMatchingForStatements(NextStatement statement) {
@@ -463,67 +856,92 @@ public class JavaASM implements AstVisitor {
         throw new IllegalStateException("Could not find matching FOR for: " + varname);
     }
 
+    /*
+     A resumable program doesn't block on INPUT.  Instead, if no input has been
+     offered (see BasProgram.offerInput), it saves its locals in fields, notes
+     which INPUT it was at and returns from run().  The next call to run()
+     restores the locals and jumps straight back to that INPUT.  Everything
+     else (DATA pointer, GOSUB stack etc.) is already held in fields, so a
+     waiting program is just a small object rather than a blocked thread.
+     */
     @Override
     public void visit(InputStatement statement) {
         for (var varName: statement.names()) {
-            createLocalVarIndex(varName);
-            addCallback(methodVisitor -> {
-                if (statement.prompt() != null) {
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitLdcInsn(statement.prompt());
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "print",
-                            "(Ljava/lang/String;)V");
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitLdcInsn("? ");
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "print",
-                            "(Ljava/lang/String;)V");
-                }
-                varStore(methodVisitor, varName, () -> {
-                    var dataType = varName.dataType();
-                    var returnType = toDescriptorString(dataType);
-                    methodVisitor.visitVarInsn(ALOAD, 0);
-                    methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                            className,
-                            "input" + dataType,
-                            "()" + returnType);
-                });
+            var methodVisitor = currentMethodVisitor;
+            if (statement.prompt() != null) {
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitLdcInsn(statement.prompt());
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                        className,
+                        "print",
+                        "(Ljava/lang/String;)V");
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitLdcInsn("? ");
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                        className,
+                        "print",
+                        "(Ljava/lang/String;)V");
+            }
+            if (options.resumable()) {
+                suspendUntilInput(methodVisitor, varName.dataType());
+            }
+            varStore(methodVisitor, varName, () -> {
+                var dataType = varName.dataType();
+                var returnType = toDescriptorString(dataType);
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                        className,
+                        (options.resumable() ? "takeInput" : "input") + dataType,
+                        "()" + returnType);
             });
         }
     }
 
+    private void suspendUntilInput(MethodVisitor methodVisitor, DataType dataType) {
+        var inputLabel = new Label();
+        var haveInputLabel = new Label();
+        resumeLabels.add(inputLabel);
+        methodVisitor.visitLabel(inputLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "hasInput" + dataType,
+            "()Z");
+        methodVisitor.visitJumpInsn(IFNE, haveInputLabel);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitLdcInsn(resumeLabels.size());
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "suspendAt",
+            "(I)V");
+        methodVisitor.visitJumpInsn(GOTO, suspendLabel);
+        methodVisitor.visitLabel(haveInputLabel);
+        methodVisitor.visitInsn(NOP);
+    }
+
     @Override
     public void visit(DimStatement statement) {
         for (var array: statement.arrays()) {
-            var name = array.name();
             var dim = array.getArrayDimensions();
-            if (dimensionedArrays.put(dim.name(), dim) != null) {
-                throw new IllegalStateException("Cannot re-dim array: " + name);
+            if (options.memoryLimited()) {
+                visitArrayDim(currentMethodVisitor, dim, array.sizes());
+            } else {
+                visitArrayCreate(currentMethodVisitor, dim, array.sizes());
             }
-            addCallback(methodVisitor -> {
-                visitArrayCreate(methodVisitor, dim, array.sizes());
-            });
         }
     }
 
     @Override
     public void visit(RemarkStatement statement) {
         // this is purely here in case we have code that tries to jump to this
-        addCallback(methodVisitor -> {
-            methodVisitor.visitInsn(NOP);
-        });
+        currentMethodVisitor.visitInsn(NOP);
     }
 
     @Override
     public void visit(LetStatement statement) {
         var varName = statement.name();
-        createLocalVarIndex(varName);
-        addCallback(methodVisitor -> {
-            varStore(methodVisitor, varName, () -> statement.expression().visit(this));
-        });
+        var methodVisitor = currentMethodVisitor;
+        varStore(methodVisitor, varName, () -> statement.expression().visit(this));
     }
 
     private void varStore(MethodVisitor methodVisitor, VarName varName, Runnable value) {
@@ -532,22 +950,57 @@ public class JavaASM implements AstVisitor {
         if (varName.isArray()) {
             methodVisitor.visitVarInsn(ALOAD, varIndex);
             visitArrayIndexes(methodVisitor, varName.indexes());
-            value.run();
-            var store = switch (dataType) {
-                case FLOAT -> FASTORE;
-                case STRING -> AASTORE;
-            };
-            methodVisitor.visitInsn(store);
+            switch (dataType) {
+                case FLOAT -> {
+                    value.run();
+                    methodVisitor.visitInsn(FASTORE);
+                }
+                case STRING -> {
+                    if (!options.memoryLimited()) {
+                        value.run();
+                        methodVisitor.visitInsn(AASTORE);
+                        return;
+                    }
+                    // the element being replaced, for storeString()
+                    methodVisitor.visitInsn(DUP2);
+                    methodVisitor.visitInsn(AALOAD);
+                    methodVisitor.visitVarInsn(ALOAD, 0);
+                    methodVisitor.visitInsn(SWAP);
+                    value.run();
+                    visitStoreString(methodVisitor);
+                    methodVisitor.visitInsn(AASTORE);
+                }
+            }
         } else {
-            value.run();
-            var store = switch (dataType) {
-                case FLOAT -> FSTORE;
-                case STRING -> ASTORE;
-            };
-            methodVisitor.visitVarInsn(store, varIndex);
+            switch (dataType) {
+                case FLOAT -> {
+                    value.run();
+                    methodVisitor.visitVarInsn(FSTORE, varIndex);
+                }
+                case STRING -> {
+                    if (!options.memoryLimited()) {
+                        value.run();
+                        methodVisitor.visitVarInsn(ASTORE, varIndex);
+                        return;
+                    }
+                    methodVisitor.visitVarInsn(ALOAD, 0);
+                    methodVisitor.visitVarInsn(ALOAD, varIndex);
+                    value.run();
+                    visitStoreString(methodVisitor);
+                    methodVisitor.visitVarInsn(ASTORE, varIndex);
+                }
+            }
         }
     }
 
+    // with this, the string being replaced and the new one on the stack, counts the new one against the memory quota
+    private void visitStoreString(MethodVisitor methodVisitor) {
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "storeString",
+            "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;");
+    }
+
     private void visitArrayIndexes(MethodVisitor methodVisitor, List<Expression> indexes) {
         var innerIndexes = indexes.subList(0, indexes.size() - 1);
         for (var index: innerIndexes) {
@@ -636,8 +1089,9 @@ public class JavaASM implements AstVisitor {
         comparison(expression, IFLE);
     }
 
-    private void comparison(Expression expression, int opcode) {
-        switch (expression.getDataType()) {
+    private void comparison(BinaryExpression expression, int opcode) {
+        // comparisons always give a FLOAT, so it's the operand type that matters
+        switch (types.of(expression.lhs())) {
             case FLOAT -> floatComparison(opcode);
             case STRING -> stringComparison(opcode);
         }
@@ -664,14 +1118,14 @@ public class JavaASM implements AstVisitor {
         // spec wants 0 for true and -1 for false
         // using IF* and GOTO like this seems to be
         // pretty much what Java itself uses for boolean expressions
-        var trueLabel = newTargettedLabel();
-        var falseLabel = newTargettedLabel();
+        var trueLabel = new Label();
+        var falseLabel = new Label();
         currentMethodVisitor.visitJumpInsn(opcode, trueLabel);
         currentMethodVisitor.visitLdcInsn(-1.0f);
         currentMethodVisitor.visitJumpInsn(GOTO, falseLabel);
-        visitLabelIfTargeted(currentMethodVisitor, trueLabel);
+        currentMethodVisitor.visitLabel(trueLabel);
         currentMethodVisitor.visitInsn(FCONST_0);
-        visitLabelIfTargeted(currentMethodVisitor, falseLabel);
+        currentMethodVisitor.visitLabel(falseLabel);
         currentMethodVisitor.visitInsn(NOP);
     }
 
@@ -689,7 +1143,7 @@ public class JavaASM implements AstVisitor {
         expression.lhs().visit(this);
         currentMethodVisitor.visitInsn(DUP);
         currentMethodVisitor.visitInsn(F2I);
-        var label = newTargettedLabel();
+        var label = new Label();
         // if can jump past the 2nd expression if the 1st expression evaluates the right way
         currentMethodVisitor.visitJumpInsn(opcode, label);
         currentMethodVisitor.visitInsn(POP);
@@ -700,14 +1154,21 @@ public class JavaASM implements AstVisitor {
 
     @Override
     public void visit(Addition expression) {
-        visitExpressions(expression);
-        switch (expression.getDataType()) {
-            case FLOAT -> currentMethodVisitor.visitInsn(FADD);
-            case STRING -> currentMethodVisitor.visitMethodInsn(INVOKEVIRTUAL,
-                "java/lang/String",
-                "concat",
-                String.format("(%s)%s", String.class.descriptorString(), String.class.descriptorString())
-            );
+        switch (types.of(expression)) {
+            case FLOAT -> {
+                visitExpressions(expression);
+                currentMethodVisitor.visitInsn(FADD);
+            }
+            case STRING -> {
+                // joined by the runtime, so the length can be checked
+                currentMethodVisitor.visitVarInsn(ALOAD, 0);
+                visitExpressions(expression);
+                currentMethodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+                    className,
+                    "concat",
+                    String.format("(%s%s)%s", String.class.descriptorString(), String.class.descriptorString(), String.class.descriptorString())
+                );
+            }
         }
     }
 
@@ -775,6 +1236,7 @@ public class JavaASM implements AstVisitor {
     }
 
     private void storeDataConstants(MethodVisitor methodVisitor) {
+        var dataConstants = declarations.getDataConstants();
         if (dataConstants.isEmpty()) {
             return;
         }
@@ -798,62 +1260,38 @@ public class JavaASM implements AstVisitor {
         methodVisitor.visitFieldInsn(PUTFIELD, className, "data", "[" + Object.class.descriptorString());
     }
 
-    private List<ArrayDim> checkForDefaultArrays() {
-        var arrayDims = declaredVariables.stream()
-                .filter(VarName::isArray)
-                .map(VarName::getArrayDimensions)
-                .collect(Collectors.groupingBy(ArrayDim::name, Collectors.toSet()));
-        var defaultArrays = new ArrayList<ArrayDim>();
-        for (var entry: arrayDims.entrySet()) {
-            var name = entry.getKey();
-            var values = entry.getValue();
-            if (values.size() > 1) {
-                throw new IllegalStateException(name + " uses differing number of array dimensions: " + values);
-            }
-            var arrayDim = values.iterator().next();
-            var dimension = dimensionedArrays.get(name);
-            if (dimension != null) {
-                if (!arrayDim.equals(dimension)) {
-                    throw new IllegalStateException(name + " was dimension as: " + dimension + ", but variable expected: " + arrayDim);
-                }
-                continue;
-            }
-            // create array of default size 10 if none has already been DIM'd
-            if (arrayDim.dimensions() != 1) {
-                throw new IllegalStateException("Can only use 1-dimensional arrays without DIMing first");
-            }
-            defaultArrays.add(arrayDim);
-        }
-        return defaultArrays;
-    }
-
     private void initLocalVars(MethodVisitor methodVisitor) {
         // this is done to ensure all variables have the scope of the entire run() method
         // to simplify things (scoping in BASIC is less specific than Java)
-        for (var var: declaredVariables) {
-            if (var.isArray()) {
-                var arrayDim = var.getArrayDimensions();
-                var sizes = Collections.nCopies(arrayDim.dimensions(), 0.0f).stream()
-                        .map(FloatConstant::new)
-                        .toList();
-                visitArrayCreate(methodVisitor, arrayDim, sizes);
-            } else {
-                switch (var.dataType()) {
-                    case FLOAT -> {
-                        methodVisitor.visitLdcInsn(0.0f);
-                        methodVisitor.visitVarInsn(FSTORE, getLocalVarIndex(var));
-                    }
-                    case STRING -> {
-                        methodVisitor.visitLdcInsn("");
-                        methodVisitor.visitVarInsn(ASTORE, getLocalVarIndex(var));
-                    }
-                };
+        for (var arrayDim: declarations.getArrays()) {
+            var sizes = Collections.nCopies(arrayDim.dimensions(), 0.0f).stream()
+                    .map(FloatConstant::new)
+                    .toList();
+            visitArrayCreate(methodVisitor, arrayDim, sizes);
+        }
+        for (var var: declarations.getVariables()) {
+            switch (var.dataType()) {
+                case FLOAT -> {
+                    methodVisitor.visitLdcInsn(0.0f);
+                    methodVisitor.visitVarInsn(FSTORE, getLocalVarIndex(var.name()));
+                }
+                case STRING -> {
+                    methodVisitor.visitLdcInsn("");
+                    methodVisitor.visitVarInsn(ASTORE, getLocalVarIndex(var.name()));
+                }
+            };
+        }
+        // a RETURN can land inside a loop by a path that never went through its FOR
+        for (var forNum = 1; forNum <= declarations.getForLoops(); forNum++) {
+            for (var name: List.of("#FOR#END#" + forNum, "#FOR#INC#" + forNum)) {
+                methodVisitor.visitLdcInsn(0.0f);
+                methodVisitor.visitVarInsn(FSTORE, getLocalVarIndex(name));
             }
         }
     }
 
-    private void initDefaultArrays(MethodVisitor methodVisitor, List<ArrayDim> defaultArrays) {
-        for (var arrayDim: defaultArrays) {
+    private void initDefaultArrays(MethodVisitor methodVisitor) {
+        for (var arrayDim: declarations.getDefaultArrays()) {
             visitArrayCreate(methodVisitor, arrayDim, List.of(new FloatConstant(10.0f)));
         }
     }
@@ -872,20 +1310,46 @@ public class JavaASM implements AstVisitor {
         methodVisitor.visitVarInsn(ASTORE, index);
     }
 
-    private void addCallback(Consumer<MethodVisitor> callback) {
-        if (currentMethodVisitor != null) {
-           callback.accept(currentMethodVisitor);
-        } else {
-            methodCallbacks.add(callback);
+    /*
+     As visitArrayCreate(), but the sizes are first passed to checkDim(), which
+     counts the array against the program's memory quota, then taken back off
+     the int[] it returns for MULTIANEWARRAY
+     */
+    private void visitArrayDim(MethodVisitor methodVisitor, ArrayDim arrayDim, List<? extends Expression> sizes) {
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        switch (arrayDim.dataType()) {
+            case FLOAT -> methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/Float", "TYPE", Class.class.descriptorString());
+            case STRING -> methodVisitor.visitLdcInsn(Type.getType(String.class));
         }
-    }
-
-    private void createLocalVarIndex(VarName varName) {
-        getLocalVarIndex(varName);
+        methodVisitor.visitLdcInsn(sizes.size());
+        methodVisitor.visitIntInsn(NEWARRAY, T_INT);
+        for (var i = 0; i < sizes.size(); i++) {
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitLdcInsn(i);
+            sizes.get(i).visit(this);
+            methodVisitor.visitInsn(F2I);
+            methodVisitor.visitInsn(IASTORE);
+        }
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL,
+            className,
+            "checkDim",
+            String.format("(%s[I)[I", Class.class.descriptorString()));
+        // leaves the sizes on the stack, under the int[]
+        for (var i = 0; i < sizes.size(); i++) {
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitLdcInsn(i);
+            methodVisitor.visitInsn(IALOAD);
+            methodVisitor.visitInsn(SWAP);
+        }
+        methodVisitor.visitInsn(POP);
+        methodVisitor.visitMultiANewArrayInsn(
+            "[".repeat(arrayDim.dimensions()) + toDescriptorString(arrayDim.dataType()),
+            arrayDim.dimensions()
+        );
+        methodVisitor.visitVarInsn(ASTORE, getLocalVarIndex(arrayDim.name()));
     }
 
     private int getLocalVarIndex(VarName varName) {
-        declaredVariables.add(varName);
         return getLocalVarIndex(varName.name());
     }
 
@@ -893,36 +1357,90 @@ public class JavaASM implements AstVisitor {
         return localVarIndexes.computeIfAbsent(name, n -> nextLocalVarIndex.getAndIncrement());
     }
 
+    // ProgramDeclarations has already checked that every line jumped to exists
     private Label targetLineLabel(String lineLabel) {
-        var label = linesToLabels.get(lineLabel);
-        if (label == null) {
-            throw new IllegalStateException("Unknown destination label: " + lineLabel);
-        }
-        targetLabels.add(label);
-        return label;
+        return linesToLabels.get(lineLabel);
     }
 
-    private Label targetNextLineLabel(Line line) {
-        var nextLine = lines.higher(line);
-        Label label;
-        if (nextLine == null) {
-            label = endLabel;
-        } else {
-            label = linesToLabels.get(nextLine.label());
+    /*
+     resumable: see visit(InputStatement), INPUT returns from run() rather than
+     blocking when there is no input (see BasProgram.offerInput)
+
+     budgeted: backward jumps count against a step budget and deadline (see
+     BasProgram.setStepBudget), so runaway programs can be stopped
+
+     memoryLimited: DIM and storing strings count against a memory quota (see
+     BasProgram.setMemoryQuota), otherwise they're as cheap as they can be
+
+     monitored: keeps count of the lines run and which line is running, for
+     BasProgram.getStatus (and so ProgramMonitor)
+
+     profiling: counts how many times each line runs and optionally how long
+     each GOSUB takes (see BasProgram.getProfile and ProfileReport)
+
+     sourceFile: the name of the BASIC source file recorded in the class, for
+     stack traces and profilers (the class name + .bas if null)
+     */
+    public record Options(boolean resumable, boolean budgeted, boolean memoryLimited, boolean monitored, Profiling profiling, String sourceFile) {
+        public static final Options DEFAULT = new Options(false, false, false, false, Profiling.NONE, null);
+
+        public Options withResumable(boolean resumable) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
+        }
+
+        public Options withBudgeted(boolean budgeted) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
+        }
+
+        public Options withMemoryLimited(boolean memoryLimited) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
+        }
+
+        public Options withMonitored(boolean monitored) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
+        }
+
+        public Options withProfiling(Profiling profiling) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
+        }
+
+        public Options withSourceFile(String sourceFile) {
+            return new Options(resumable, budgeted, memoryLimited, monitored, profiling, sourceFile);
         }
-        targetLabels.add(label);
-        return label;
     }
 
-    private Label newTargettedLabel() {
-        var label = new Label();
-        targetLabels.add(label);
-        return label;
+    /*
+     localSlots and maxStack are for run(), as are the times.  methodCodeSizes
+     (bytes of bytecode) is keyed by method name + descriptor.
+     */
+    public record CodeStats(
+        Duration codegenTime,
+        Duration frameTime,
+        int lines,
+        int statements,
+        int localSlots,
+        int maxStack,
+        int runCodeSize,
+        int constantPoolSize,
+        int classSize,
+        Map<String, Integer> methodCodeSizes
+    ) {
+
     }
 
-    private void visitLabelIfTargeted(MethodVisitor methodVisitor, Label label) {
-        if (targetLabels.contains(label)) {
-            methodVisitor.visitLabel(label);
+    public enum Profiling {
+        NONE,
+        LINES,
+        LINES_AND_GOSUBS
+    }
+
+    record SavedLocal(int index, String descriptor) {
+        boolean isFloat() {
+            return descriptor.equals(Float.TYPE.descriptorString());
+        }
+
+        String internalName() {
+            return descriptor.startsWith("L") ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
         }
     }
 
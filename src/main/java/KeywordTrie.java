@@ -0,0 +1,110 @@
+import runtime.FunctionDef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ A DFA (a trie, as there are no loops) over every keyword and built-in function
+ name, built once and shared by all Tokenizers.  The tokenizer steps through it
+ a character at a time as it scans a name, so a keyword or function can be
+ recognised without building any strings.
+
+ States are numbers, with the transitions held in one flat table indexed by
+ state * ALPHABET_SIZE + symbol.  The start state is 0 and NO_STATE means there
+ is nothing that can match.
+ */
+final class KeywordTrie {
+    static final int NO_STATE = -1;
+    static final int START = 0;
+    static final KeywordTrie INSTANCE = new KeywordTrie(
+        List.of(Keyword.values()),
+        FunctionDef.getFunctionDefs().stream().map(FunctionDef::name).distinct().toList()
+    );
+
+    // A-Z, 0-9 and $
+    private static final int ALPHABET_SIZE = 26 + 10 + 1;
+
+    private final int[] transitions;
+    private final Keyword[] keywords;
+    private final String[] functions;
+
+    KeywordTrie(List<Keyword> keywords, List<String> functions) {
+        var transitions = new ArrayList<int[]>();
+        var stateKeywords = new ArrayList<Keyword>();
+        var stateFunctions = new ArrayList<String>();
+        transitions.add(newState());
+        stateKeywords.add(null);
+        stateFunctions.add(null);
+        var words = new ArrayList<String>();
+        keywords.forEach(keyword -> words.add(keyword.name()));
+        words.addAll(functions);
+        for (var i = 0; i < words.size(); i++) {
+            var word = words.get(i);
+            var state = START;
+            for (var j = 0; j < word.length(); j++) {
+                var symbol = symbol(word.charAt(j));
+                if (symbol == -1) {
+                    throw new IllegalArgumentException("Unsupported character in: " + word);
+                }
+                var next = transitions.get(state)[symbol];
+                if (next == NO_STATE) {
+                    next = transitions.size();
+                    transitions.add(newState());
+                    stateKeywords.add(null);
+                    stateFunctions.add(null);
+                    transitions.get(state)[symbol] = next;
+                }
+                state = next;
+            }
+            if (i < keywords.size()) {
+                stateKeywords.set(state, keywords.get(i));
+            } else {
+                stateFunctions.set(state, word);
+            }
+        }
+        this.transitions = new int[transitions.size() * ALPHABET_SIZE];
+        for (var state = 0; state < transitions.size(); state++) {
+            System.arraycopy(transitions.get(state), 0, this.transitions, state * ALPHABET_SIZE, ALPHABET_SIZE);
+        }
+        this.keywords = stateKeywords.toArray(new Keyword[0]);
+        this.functions = stateFunctions.toArray(new String[0]);
+    }
+
+    private static int[] newState() {
+        var state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, NO_STATE);
+        return state;
+    }
+
+    private static int symbol(char c) {
+        if ('A' <= c && c <= 'Z') {
+            return c - 'A';
+        }
+        if ('0' <= c && c <= '9') {
+            return 26 + c - '0';
+        }
+        if (c == '$') {
+            return 36;
+        }
+        return -1;
+    }
+
+    int next(int state, char c) {
+        if (state == NO_STATE) {
+            return NO_STATE;
+        }
+        var symbol = symbol(c);
+        return symbol == -1 ? NO_STATE : transitions[state * ALPHABET_SIZE + symbol];
+    }
+
+    // the keyword matched on reaching this state, or null if there isn't one
+    Keyword keyword(int state) {
+        return state == NO_STATE ? null : keywords[state];
+    }
+
+    // the function name matched on reaching this state, or null if there isn't one
+    String function(int state) {
+        return state == NO_STATE ? null : functions[state];
+    }
+}
@@ -0,0 +1,348 @@
+import ast.Addition;
+import ast.EndStatement;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatSubtraction;
+import ast.ForStatement;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.IfStatement;
+import ast.InputStatement;
+import ast.LetStatement;
+import ast.Line;
+import ast.NextStatement;
+import ast.OnGotoStatement;
+import ast.Program;
+import ast.ReadStatement;
+import ast.ReturnStatement;
+import ast.Statement;
+import ast.StopStatement;
+import ast.VarName;
+import ast.Variable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Finds the natural loops in a program by looking for back-edges in the graph
+ of lines (an edge to a line that dominates the line it comes from).  This picks
+ up loops written with IF...THEN and GOTO as well as FOR/NEXT.  As the loop header
+ dominates the whole body the only way into a natural loop is via its header.
+
+ GOSUB is treated as an edge to the subroutine (so subroutine bodies are analysed too)
+ and RETURN as the end of a path.
+ */
+public class LoopAnalysis {
+    private final List<Line> lines;
+    private final Map<String, Integer> lineIndexes = new HashMap<>();
+    private final List<List<Integer>> successors = new ArrayList<>();
+    private final List<List<Integer>> predecessors = new ArrayList<>();
+    private int[] idoms;
+    private int[] rpoNumbers;
+
+    private LoopAnalysis(Program program) {
+        this.lines = program.lines();
+        for (var i = 0; i < lines.size(); i++) {
+            lineIndexes.put(lines.get(i).label(), i);
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+    }
+
+    public static List<NaturalLoop> findLoops(Program program) {
+        var analysis = new LoopAnalysis(program);
+        analysis.buildGraph();
+        analysis.computeDominators();
+        return analysis.naturalLoops();
+    }
+
+    private void buildGraph() {
+        var openFors = new ArrayDeque<OpenFor>();
+        for (var i = 0; i < lines.size(); i++) {
+            var fallsThrough = true;
+            for (var statement: lines.get(i).statements()) {
+                if (!addEdges(i, statement, openFors)) {
+                    fallsThrough = false;
+                    break;
+                }
+            }
+            if (fallsThrough && i + 1 < lines.size()) {
+                addEdge(i, i + 1);
+            }
+        }
+    }
+
+    // returns true if control can continue on to the next statement
+    private boolean addEdges(int from, Statement statement, Deque<OpenFor> openFors) {
+        if (statement instanceof GotoStatement gotoStatement) {
+            addEdge(from, gotoStatement.destinationLabel());
+            return false;
+        } else if (statement instanceof GoSubStatement goSubStatement) {
+            addEdge(from, goSubStatement.destinationLabel());
+        } else if (statement instanceof OnGotoStatement onGotoStatement) {
+            onGotoStatement.destinationLabels().forEach(label -> addEdge(from, label));
+        } else if (statement instanceof IfStatement ifStatement) {
+            addEdges(from, ifStatement.then(), openFors);
+        } else if (statement instanceof ForStatement forStatement) {
+            openFors.push(new OpenFor(forStatement.varname(), from));
+        } else if (statement instanceof NextStatement nextStatement) {
+            // pair up FOR and NEXT statically: a NEXT without a variable closes the innermost
+            // open FOR and NEXT I the innermost open FOR I
+            if (nextStatement.varnames().isEmpty()) {
+                if (!openFors.isEmpty()) {
+                    addEdge(from, openFors.pop().line());
+                }
+            }
+            for (var varname: nextStatement.varnames()) {
+                var it = openFors.iterator();
+                while (it.hasNext()) {
+                    var openFor = it.next();
+                    if (openFor.varname().equals(varname)) {
+                        it.remove();
+                        addEdge(from, openFor.line());
+                        break;
+                    }
+                }
+            }
+        } else {
+            return !(statement instanceof ReturnStatement
+                || statement instanceof EndStatement
+                || statement instanceof StopStatement);
+        }
+        return true;
+    }
+
+    private void addEdge(int from, String label) {
+        var to = lineIndexes.get(label);
+        if (to != null) {
+            addEdge(from, to);
+        }
+    }
+
+    private void addEdge(int from, int to) {
+        successors.get(from).add(to);
+        predecessors.get(to).add(from);
+    }
+
+    // "A Simple, Fast Dominance Algorithm" - Cooper, Harvey & Kennedy
+    private void computeDominators() {
+        var rpo = reversePostOrder();
+        rpoNumbers = new int[lines.size()];
+        Arrays.fill(rpoNumbers, -1);
+        for (var i = 0; i < rpo.size(); i++) {
+            rpoNumbers[rpo.get(i)] = i;
+        }
+        idoms = new int[lines.size()];
+        Arrays.fill(idoms, -1);
+        if (rpo.isEmpty()) {
+            return;
+        }
+        idoms[rpo.get(0)] = rpo.get(0);
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (var node: rpo.subList(1, rpo.size())) {
+                var newIdom = -1;
+                for (var predecessor: predecessors.get(node)) {
+                    if (idoms[predecessor] == -1) {
+                        continue;
+                    }
+                    newIdom = newIdom == -1 ? predecessor : intersect(predecessor, newIdom);
+                }
+                if (idoms[node] != newIdom) {
+                    idoms[node] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (rpoNumbers[a] > rpoNumbers[b]) {
+                a = idoms[a];
+            }
+            while (rpoNumbers[b] > rpoNumbers[a]) {
+                b = idoms[b];
+            }
+        }
+        return a;
+    }
+
+    private List<Integer> reversePostOrder() {
+        var postOrder = new ArrayList<Integer>();
+        if (lines.isEmpty()) {
+            return postOrder;
+        }
+        var visited = new BitSet(lines.size());
+        // iterative DFS, as recursion could overflow on large programs
+        var stack = new ArrayDeque<int[]>();
+        stack.push(new int[] {0, 0});
+        visited.set(0);
+        while (!stack.isEmpty()) {
+            var top = stack.peek();
+            var nodeSuccessors = successors.get(top[0]);
+            if (top[1] < nodeSuccessors.size()) {
+                var next = nodeSuccessors.get(top[1]++);
+                if (!visited.get(next)) {
+                    visited.set(next);
+                    stack.push(new int[] {next, 0});
+                }
+            } else {
+                postOrder.add(stack.pop()[0]);
+            }
+        }
+        var rpo = new ArrayList<Integer>(postOrder.size());
+        for (var i = postOrder.size() - 1; i >= 0; i--) {
+            rpo.add(postOrder.get(i));
+        }
+        return rpo;
+    }
+
+    private boolean dominates(int dominator, int node) {
+        if (idoms[node] == -1) {
+            return false;
+        }
+        while (true) {
+            if (node == dominator) {
+                return true;
+            }
+            var idom = idoms[node];
+            if (idom == node) {
+                return false;
+            }
+            node = idom;
+        }
+    }
+
+    private List<NaturalLoop> naturalLoops() {
+        var loops = new ArrayList<NaturalLoop>();
+        for (var from = 0; from < lines.size(); from++) {
+            for (var to: successors.get(from)) {
+                if (dominates(to, from)) {
+                    loops.add(naturalLoop(to, from));
+                }
+            }
+        }
+        return loops;
+    }
+
+    private NaturalLoop naturalLoop(int header, int latch) {
+        var body = new BitSet(lines.size());
+        body.set(header);
+        var worklist = new ArrayDeque<Integer>();
+        if (!body.get(latch)) {
+            body.set(latch);
+            worklist.push(latch);
+        }
+        while (!worklist.isEmpty()) {
+            var node = worklist.pop();
+            for (var predecessor: predecessors.get(node)) {
+                if (!body.get(predecessor)) {
+                    body.set(predecessor);
+                    worklist.push(predecessor);
+                }
+            }
+        }
+        var bodyLines = body.stream()
+            .mapToObj(lines::get)
+            .toList();
+        return new NaturalLoop(
+            lines.get(header).label(),
+            lines.get(latch).label(),
+            bodyLines.stream().map(Line::label).toList(),
+            findInductionVariables(body, latch)
+        );
+    }
+
+    private Map<String, Float> findInductionVariables(BitSet body, int latch) {
+        var steps = new LinkedHashMap<String, Float>();
+        var assignments = new HashMap<String, Integer>();
+        for (var index = body.nextSetBit(0); index >= 0; index = body.nextSetBit(index + 1)) {
+            // a line that doesn't dominate the latch can be jumped over, so isn't run every iteration
+            var everyIteration = dominates(index, latch);
+            for (var statement: lines.get(index).statements()) {
+                var conditional = !everyIteration;
+                while (statement instanceof IfStatement ifStatement) {
+                    statement = ifStatement.then();
+                    conditional = true;
+                }
+                // a conditional update still counts as an assignment, but isn't a step
+                writtenVariables(statement).forEach(name -> assignments.merge(name, 1, Integer::sum));
+                if (!conditional && statement instanceof LetStatement let && !let.name().isArray()) {
+                    var step = inductionStep(let.name().name(), let.expression());
+                    if (step != null) {
+                        steps.put(let.name().name(), step);
+                    }
+                }
+            }
+        }
+        // only a variable updated in exactly one place, every iteration, steps by a fixed amount each iteration
+        steps.keySet().removeIf(name -> assignments.get(name) != 1);
+        return steps;
+    }
+
+    // the scalar variables a statement assigns to (a NEXT without a variable steps its FOR's,
+    // but the FOR is then in the loop too, so that variable has already been counted)
+    private List<String> writtenVariables(Statement statement) {
+        if (statement instanceof LetStatement let) {
+            return scalarNames(List.of(let.name()));
+        } else if (statement instanceof InputStatement input) {
+            return scalarNames(input.names());
+        } else if (statement instanceof ReadStatement read) {
+            return scalarNames(read.names());
+        } else if (statement instanceof ForStatement forStatement) {
+            return List.of(forStatement.varname());
+        } else if (statement instanceof NextStatement next) {
+            return next.varnames();
+        }
+        return List.of();
+    }
+
+    private List<String> scalarNames(List<VarName> names) {
+        return names.stream()
+            .filter(name -> !name.isArray())
+            .map(VarName::name)
+            .toList();
+    }
+
+    private Float inductionStep(String name, Expression expression) {
+        if (expression instanceof Addition addition) {
+            if (isVariable(addition.lhs(), name) && addition.rhs() instanceof FloatConstant step) {
+                return step.constant();
+            }
+            if (isVariable(addition.rhs(), name) && addition.lhs() instanceof FloatConstant step) {
+                return step.constant();
+            }
+        } else if (expression instanceof FloatSubtraction subtraction) {
+            if (isVariable(subtraction.lhs(), name) && subtraction.rhs() instanceof FloatConstant step) {
+                return -step.constant();
+            }
+        }
+        return null;
+    }
+
+    private boolean isVariable(Expression expression, String name) {
+        return expression instanceof Variable variable
+            && !variable.name().isArray()
+            && variable.name().name().equals(name);
+    }
+
+    record OpenFor(String varname, int line) {
+
+    }
+
+    public record NaturalLoop(String header, String latch, List<String> body, Map<String, Float> inductionVariables) {
+
+        public boolean contains(String label) {
+            return body.contains(label);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import ast.BinaryExpression;
+import ast.Equals;
+import ast.Expression;
+import ast.GotoStatement;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.IfStatement;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.Line;
+import ast.NotEquals;
+import ast.Program;
+import ast.Statement;
+import ast.Variable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ Rewrites "top tested" loops built from IF...THEN and GOTO, e.g.
+
+   100 IF I > 10 THEN 200
+   110 PRINT I
+   120 I = I + 1
+   130 GOTO 100
+   200 ...
+
+ into the rotated shape javac uses for while loops, where the back-edge is
+ the loop condition itself at the bottom of the loop:
+
+   130 IF I <= 10 THEN 110 : GOTO 200
+
+ The header is left in place as the guard for the first iteration.  The
+ loop must be a natural loop (so the header is its only entry point), the
+ header line must be just the exit test and the condition a single comparison
+ that can be negated.  Only counted loops are rotated, where the exit test
+ compares one of the loop's induction variables (see LoopAnalysis), as those
+ are the loops HotSpot's loop optimisations go after.  Any other loop is left
+ alone, as rotating it would only duplicate its test.
+ */
+public class LoopRotation implements Pass {
+
+    @Override
+    public String name() {
+        return "loop-rotation";
+    }
+
+    @Override
+    public OptimisationLevel level() {
+        return OptimisationLevel.O2;
+    }
+
+    @Override
+    public List<String> dependencies() {
+        // folding first means more conditions end up as simple comparisons
+        return List.of("constant-folding");
+    }
+
+    @Override
+    public Program run(Program program) {
+        var loops = LoopAnalysis.findLoops(program);
+        var lines = new ArrayList<>(program.lines());
+        var lineIndexes = new HashMap<String, Integer>();
+        for (var i = 0; i < lines.size(); i++) {
+            lineIndexes.put(lines.get(i).label(), i);
+        }
+        for (var loop: loops) {
+            var headerIndex = lineIndexes.get(loop.header());
+            var latchIndex = lineIndexes.get(loop.latch());
+            if (headerIndex + 1 >= lines.size() || latchIndex.equals(headerIndex)) {
+                continue;
+            }
+            var header = lines.get(headerIndex);
+            var bodyStart = lines.get(headerIndex + 1).label();
+            var latch = lines.get(latchIndex);
+            if (!loop.contains(bodyStart) || !endsWithGoto(latch, loop.header())) {
+                continue;
+            }
+            if (header.statements().size() != 1 || !(header.statements().get(0) instanceof IfStatement exitTest)) {
+                continue;
+            }
+            if (!(exitTest.then() instanceof GotoStatement exit) || loop.contains(exit.destinationLabel())) {
+                continue;
+            }
+            if (!isCounted(loop, exitTest.predicate())) {
+                continue;
+            }
+            var continueCondition = negate(exitTest.predicate());
+            if (continueCondition == null) {
+                continue;
+            }
+            var statements = new ArrayList<>(latch.statements().subList(0, latch.statements().size() - 1));
+            statements.add(new IfStatement(continueCondition, new GotoStatement(bodyStart)));
+            statements.add(exit);
+            lines.set(latchIndex, new Line(latch.label(), statements));
+        }
+        return new Program(lines);
+    }
+
+    private boolean isCounted(LoopAnalysis.NaturalLoop loop, Expression exitTest) {
+        return exitTest instanceof BinaryExpression comparison
+            && (isInductionVariable(loop, comparison.lhs()) || isInductionVariable(loop, comparison.rhs()));
+    }
+
+    private boolean isInductionVariable(LoopAnalysis.NaturalLoop loop, Expression expression) {
+        return expression instanceof Variable variable
+            && !variable.name().isArray()
+            && loop.inductionVariables().containsKey(variable.name().name());
+    }
+
+    private boolean endsWithGoto(Line line, String label) {
+        var statements = line.statements();
+        Statement last = statements.get(statements.size() - 1);
+        return last instanceof GotoStatement gotoStatement && gotoStatement.destinationLabel().equals(label);
+    }
+
+    // each comparison is decided by the sign of a single FCMPG/compareTo, so flipping
+    // the comparison is an exact negation (even for NaN)
+    private Expression negate(Expression expression) {
+        if (expression instanceof Equals e) {
+            return new NotEquals(e.lhs(), e.rhs());
+        } else if (expression instanceof NotEquals e) {
+            return new Equals(e.lhs(), e.rhs());
+        } else if (expression instanceof LessThan e) {
+            return new GreaterThanEquals(e.lhs(), e.rhs());
+        } else if (expression instanceof GreaterThanEquals e) {
+            return new LessThan(e.lhs(), e.rhs());
+        } else if (expression instanceof GreaterThan e) {
+            return new LessThanEquals(e.lhs(), e.rhs());
+        } else if (expression instanceof LessThanEquals e) {
+            return new GreaterThan(e.lhs(), e.rhs());
+        }
+        return null;
+    }
+}
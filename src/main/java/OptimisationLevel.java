@@ -0,0 +1,17 @@
+public enum OptimisationLevel {
+    O0,
+    O1,
+    O2;
+
+    public static OptimisationLevel fromFlag(String flag) {
+        try {
+            return OptimisationLevel.valueOf(flag.substring(1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown optimisation level: " + flag);
+        }
+    }
+
+    public boolean includes(OptimisationLevel level) {
+        return compareTo(level) >= 0;
+    }
+}
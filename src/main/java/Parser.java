@@ -46,12 +46,17 @@ import runtime.FunctionDef;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -80,12 +85,119 @@ public class Parser {
     private String currentLineNumber;
 
     public Program parse(Reader source) throws IOException {
-        var tokenizer = new Tokenizer(source);
+        return parse(new Tokenizer(source));
+    }
+
+    public Program parse(CharSequence source) throws IOException {
+        return parse(new Tokenizer(source));
+    }
+
+    /*
+     Parses large sources in parallel.  The source is split into chunks at line
+     breaks and each chunk is parsed by its own Parser on the fork/join pool.  The
+     lines are joined back together in source order before being sorted, so the
+     result is exactly the same as a sequential parse.  If any chunk fails the
+     whole source is parsed again sequentially, so errors are reported the same way
+     too (this also covers the case of a string running over a line break, which
+     splitting could have cut in two).
+     */
+    public Program parseParallel(CharSequence source) throws IOException {
+        List<Line> lines;
+        var event = CompilePhaseEvent.begin("parse-parallel", null);
+        try {
+            lines = ForkJoinPool.commonPool().invoke(new ParseTask(source, 0, source.length()));
+        } catch (RuntimeException e) {
+            return parse(source);
+        }
+        var program = sortedProgram(lines);
+        event.commit();
+        return program;
+    }
+
+    /*
+     The lines of the source in line number order, parsed as they are iterated
+     over rather than all up front.  Only the line numbers and where each line
+     starts and ends in the source are kept, so there is never more than one
+     line's AST in memory at once (unless the caller hangs on to them).
+     */
+    public Iterable<Line> streamLines(CharSequence source) throws IOException {
+        var spans = indexLines(source);
+        return () -> new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < spans.size();
+            }
+
+            @Override
+            public Line next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var span = spans.get(next++);
+                try {
+                    return nextLine(new Tokenizer(source, span.start(), span.end()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private List<LineSpan> indexLines(CharSequence source) throws IOException {
+        var spans = new ArrayList<LineSpan>();
+        var length = source.length();
+        var start = 0;
+        while (start < length) {
+            var end = start;
+            while (end < length && source.charAt(end) != '\n') {
+                end++;
+            }
+            var labelStart = start;
+            while (labelStart < end && Character.isWhitespace(source.charAt(labelStart))) {
+                labelStart++;
+            }
+            if (labelStart < end) {
+                var labelEnd = labelStart;
+                while (labelEnd < end && isLabelChar(source.charAt(labelEnd))) {
+                    labelEnd++;
+                }
+                if (labelEnd == labelStart || labelEnd < end && source.charAt(labelEnd) == '.') {
+                    // let the parser report the missing or fractional line number
+                    nextLine(new Tokenizer(source, start, end));
+                }
+                var label = source.subSequence(labelStart, labelEnd).toString();
+                spans.add(new LineSpan(Integer.parseInt(label), start, end));
+            }
+            start = end + 1;
+        }
+        spans.sort(Comparator.comparing(LineSpan::numericLabel));
+        return spans;
+    }
+
+    private boolean isLabelChar(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private Program parse(Tokenizer tokenizer) throws IOException {
+        // tokens are only read as the parser needs them, so this includes tokenising
+        var event = CompilePhaseEvent.begin("parse", null);
+        var program = sortedProgram(parseLines(tokenizer));
+        event.commit();
+        return program;
+    }
+
+    private List<Line> parseLines(Tokenizer tokenizer) throws IOException {
         var lines = new ArrayList<Line>();
         Line line;
         while ((line = nextLine(tokenizer)) != null) {
             lines.add(line);
         }
+        return lines;
+    }
+
+    private Program sortedProgram(List<Line> lines) {
         lines.sort(Comparator.comparing(Line::numericLabel));
         return new Program(lines);
     }
@@ -99,6 +211,11 @@ public class Parser {
         }
         var label = nextExpectedNumber(tokenizer).text();
         currentLineNumber = label;
+        for (var i = 0; i < label.length(); i++) {
+            if (!isLabelChar(label.charAt(i))) {
+                throw parseError("Line numbers must be whole numbers");
+            }
+        }
         var statements = nextStatements(tokenizer);
         return new Line(label, statements);
     }
@@ -368,17 +485,11 @@ public class Parser {
             throw parseError("No function found for: " + name);
         }
         var args = nextFunctionParams(tokenizer);
+        // argument types are checked by the TypeChecker
         var fn = functions.stream()
             .filter(f -> f.argTypes().size() == args.size())
             .findFirst()
             .orElseThrow(() -> parseError(name + " does not take: " + args.size() + " parameters"));
-        
-        var argTypes = args.stream()
-            .map(Expression::getDataType)
-            .toList();
-        if (!fn.argTypes().equals(argTypes)) {
-            throw parseError("Wrong args type for: " + name + " expected: " + fn.argTypes() + ", but got: " + argTypes);
-        }
         return new FunctionCall(fn, args);
     }
 
@@ -470,9 +581,6 @@ public class Parser {
         var name = nextVarName(tokenizer);
         nextExpectedSymbol(tokenizer, "=");
         Expression expression = nextExpression(tokenizer);
-        if (name.dataType() != expression.getDataType()) {
-            throw parseError("Expected " + name.dataType() + " expression, but got: " + expression);
-        }
         return new LetStatement(name, expression);
     }
 
@@ -500,11 +608,6 @@ public class Parser {
         var peek = tokenizer.peek();
         if (peek.type() == Token.Type.SYMBOL && peek.text().equals("(")) {
             var indexes = nextFunctionParams(tokenizer);
-            for (var index: indexes) {
-                if (index.getDataType() != DataType.FLOAT) {
-                    throw parseError("Array indexes must be of type FLOAT");
-                }
-            }
             // append brackets to name so we don't clash with scalar types when assigning
             // local vars
             return new VarName(name + "()", dataType, indexes);
@@ -576,6 +679,56 @@ public class Parser {
         return new IllegalStateException("Line " + currentLineNumber + ": " + message);
     }
 
+    static class ParseTask extends RecursiveTask<List<Line>> {
+        private static final long serialVersionUID = 1L;
+        // below this size a chunk isn't worth splitting any further
+        static final int CHUNK_SIZE = 64 * 1024;
+
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        ParseTask(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Line> compute() {
+            if (end - start > CHUNK_SIZE) {
+                var split = lineBreakAfter(start + (end - start) / 2);
+                if (split < end) {
+                    var first = new ParseTask(source, start, split);
+                    first.fork();
+                    var second = new ParseTask(source, split, end).compute();
+                    var lines = first.join();
+                    lines.addAll(second);
+                    return lines;
+                }
+            }
+            try {
+                return new Parser().parseLines(new Tokenizer(source, start, end));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // index just after the next line break, or end if there isn't one
+        private int lineBreakAfter(int from) {
+            for (var i = from; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+    }
+
+    record LineSpan(int numericLabel, int start, int end) {
+
+    }
+
     enum Associativity {
         LEFT, RIGHT;
     }
@@ -0,0 +1,20 @@
+import ast.Program;
+
+import java.util.List;
+
+/*
+ A single optimisation over the AST, run by the PassManager
+ */
+public interface Pass {
+    String name();
+
+    // the lowest optimisation level this pass is enabled at
+    OptimisationLevel level();
+
+    // names of the passes that must have run before this one
+    default List<String> dependencies() {
+        return List.of();
+    }
+
+    Program run(Program program);
+}
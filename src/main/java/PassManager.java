@@ -0,0 +1,95 @@
+import ast.Program;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ Runs the optimisation passes selected by the optimisation level, in
+ dependency order, under an overall time budget.  The budget is only
+ checked between passes: once it has been used up no further pass is
+ started (the program is still correct, just less optimised), but a pass
+ that has started always runs to the end, so compiling can take over the
+ budget by up to as long as the slowest pass takes.
+ */
+public class PassManager {
+    private final Map<String, Pass> passes = new LinkedHashMap<>();
+    private final OptimisationLevel level;
+    private final Duration budget;
+    private final List<PassReport> reports = new ArrayList<>();
+
+    public PassManager(OptimisationLevel level, Duration budget) {
+        this.level = level;
+        this.budget = budget;
+    }
+
+    public static PassManager withDefaultPasses(OptimisationLevel level, Duration budget) {
+        var passManager = new PassManager(level, budget);
+        passManager.register(new ConstantFolding());
+        passManager.register(new LoopRotation());
+        return passManager;
+    }
+
+    public void register(Pass pass) {
+        if (passes.put(pass.name(), pass) != null) {
+            throw new IllegalArgumentException("Pass already registered: " + pass.name());
+        }
+    }
+
+    public Program run(Program program) {
+        reports.clear();
+        var event = CompilePhaseEvent.begin("optimise", null);
+        var start = System.nanoTime();
+        for (var pass: selectPasses()) {
+            var nodesBefore = AstNodeCounter.count(program);
+            if (System.nanoTime() - start > budget.toNanos()) {
+                reports.add(new PassReport(pass.name(), PassReport.Status.SKIPPED, Duration.ZERO, nodesBefore, nodesBefore));
+                continue;
+            }
+            var passStart = System.nanoTime();
+            program = pass.run(program);
+            var time = Duration.ofNanos(System.nanoTime() - passStart);
+            reports.add(new PassReport(pass.name(), PassReport.Status.RAN, time, nodesBefore, AstNodeCounter.count(program)));
+        }
+        event.commit();
+        return program;
+    }
+
+    public List<PassReport> getReports() {
+        return List.copyOf(reports);
+    }
+
+    List<Pass> selectPasses() {
+        var ordered = new ArrayList<Pass>();
+        var visited = new HashSet<String>();
+        for (var pass: passes.values()) {
+            if (level.includes(pass.level())) {
+                addWithDependencies(pass, ordered, visited, new HashSet<>());
+            }
+        }
+        return ordered;
+    }
+
+    private void addWithDependencies(Pass pass, List<Pass> ordered, Set<String> visited, Set<String> visiting) {
+        if (visited.contains(pass.name())) {
+            return;
+        }
+        if (!visiting.add(pass.name())) {
+            throw new IllegalStateException("Circular pass dependency: " + pass.name());
+        }
+        for (var dependencyName: pass.dependencies()) {
+            var dependency = passes.get(dependencyName);
+            if (dependency == null) {
+                throw new IllegalStateException(pass.name() + " depends on unknown pass: " + dependencyName);
+            }
+            // a dependency is always run, even if it would not normally be enabled at this level
+            addWithDependencies(dependency, ordered, visited, visiting);
+        }
+        visited.add(pass.name());
+        ordered.add(pass);
+    }
+}
@@ -0,0 +1,15 @@
+import java.time.Duration;
+
+public record PassReport(String name, Status status, Duration time, int nodesBefore, int nodesAfter) {
+
+    @Override
+    public String toString() {
+        return String.format("%-24s %-8s %8.3fms %6d -> %6d nodes (%+d)",
+            name, status, time.toNanos() / 1_000_000.0, nodesBefore, nodesAfter, nodesAfter - nodesBefore);
+    }
+
+    public enum Status {
+        RAN,
+        SKIPPED
+    }
+}
@@ -0,0 +1,96 @@
+import runtime.ProfileCounts;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/*
+ Turns the counts from a profiled program (see JavaASM.Options) back into
+ BASIC lines: a report of the hottest lines for people and a CSV file of every
+ line for anything else.
+ */
+public class ProfileReport {
+    private final List<SourceLine> lines;
+    private final ProfileCounts counts;
+    private final long totalCount;
+
+    public ProfileReport(List<SourceLine> lines, ProfileCounts counts) {
+        this.lines = lines;
+        this.counts = counts;
+        this.totalCount = IntStream.range(0, lines.size())
+            .mapToLong(i -> counts.lineCounts()[i])
+            .sum();
+    }
+
+    /*
+     Lines that ran, hottest first, then (if GOSUBs were timed) each
+     subroutine by total time
+     */
+    public void print(PrintStream out) {
+        out.printf("%6s %14s %7s  %s%n", "LINE", "COUNT", "SHARE", "SOURCE");
+        indexesBy(i -> counts.lineCounts()[i]).forEach(i -> out.printf("%6s %14d %6.2f%%  %s%n",
+            lines.get(i).label(),
+            counts.lineCounts()[i],
+            share(counts.lineCounts()[i]),
+            lines.get(i).source()
+        ));
+        var gosubs = indexesBy(i -> counts.gosubCalls()[i]);
+        if (gosubs.isEmpty()) {
+            return;
+        }
+        out.println();
+        out.printf("%6s %14s %14s %14s%n", "GOSUB", "CALLS", "TOTAL ms", "AVERAGE us");
+        gosubs.stream()
+            .sorted(Comparator.comparingLong((Integer i) -> counts.gosubNanos()[i]).reversed())
+            .forEach(i -> out.printf("%6s %14d %14.3f %14.3f%n",
+                lines.get(i).label(),
+                counts.gosubCalls()[i],
+                counts.gosubNanos()[i] / 1_000_000.0,
+                counts.gosubNanos()[i] / 1_000.0 / counts.gosubCalls()[i]
+            ));
+    }
+
+    // every line, in program order
+    public void writeCsv(Path file) throws IOException {
+        try (var out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("line,count,share,gosub_calls,gosub_nanos,source");
+            for (var i = 0; i < lines.size(); i++) {
+                out.printf(Locale.ROOT, "%s,%d,%.4f,%d,%d,\"%s\"%n",
+                    lines.get(i).label(),
+                    counts.lineCounts()[i],
+                    share(counts.lineCounts()[i]) / 100,
+                    counts.gosubCalls()[i],
+                    counts.gosubNanos()[i],
+                    lines.get(i).source().replace("\"", "\"\"")
+                );
+            }
+        }
+    }
+
+    private double share(long count) {
+        return totalCount == 0 ? 0.0 : 100.0 * count / totalCount;
+    }
+
+    private List<Integer> indexesBy(IntToLong value) {
+        return IntStream.range(0, lines.size())
+            .filter(i -> value.apply(i) > 0)
+            .boxed()
+            .sorted(Comparator.comparingLong((Integer i) -> value.apply(i)).reversed())
+            .toList();
+    }
+
+    private interface IntToLong {
+        long apply(int i);
+    }
+
+    public record SourceLine(String label, String source) {
+
+    }
+}
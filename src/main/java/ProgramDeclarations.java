@@ -0,0 +1,224 @@
+import ast.ArrayDim;
+import ast.DataStatement;
+import ast.DataType;
+import ast.DimStatement;
+import ast.ForStatement;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.Line;
+import ast.OnGotoStatement;
+import ast.VarName;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/*
+ A pre-pass over the lines of a program (in line number order) that collects
+ just what code generation needs to know before it starts on the run()
+ method: which lines are jumped to, where each GOSUB returns to, the DATA
+ constants and the variables and arrays that need initialising.  None of the
+ AST is kept hold of, so each line can be thrown away once visited.  When
+ streaming that means every line is parsed twice, once for this and again
+ when its code is generated, so the front end takes about twice as long in
+ exchange for memory use that doesn't grow with the program.
+ */
+public class ProgramDeclarations extends AstWalker {
+    private final Map<String, Integer> lineIndexes = new HashMap<>();
+    private final Set<String> targetedLines = new LinkedHashSet<>();
+    private final List<String> returnLines = new ArrayList<>();
+    private final Map<String, Integer> returnIndexes = new HashMap<>();
+    private final List<Object> dataConstants = new ArrayList<>();
+    private final NavigableMap<Integer, Integer> dataPositions = new TreeMap<>();
+    private final Set<VarName> variables = new LinkedHashSet<>();
+    private final Set<ArrayDim> arrays = new LinkedHashSet<>();
+    private final Map<String, ArrayDim> dimensionedArrays = new LinkedHashMap<>();
+    private final List<ArrayDim> defaultArrays = new ArrayList<>();
+    private int forLoops;
+    private Line currentLine;
+    private String gosubLine;
+    private boolean endTargeted;
+
+    public static ProgramDeclarations of(Iterable<Line> lines) {
+        var declarations = new ProgramDeclarations();
+        for (var line: lines) {
+            declarations.visit(line);
+        }
+        declarations.finish();
+        return declarations;
+    }
+
+    private void finish() {
+        if (gosubLine != null) {
+            // a GOSUB on the last line returns to the end of the program
+            returnIndexes.put(gosubLine, returnLines.size());
+            returnLines.add(null);
+            endTargeted = true;
+        }
+        for (var label: targetedLines) {
+            if (!lineIndexes.containsKey(label)) {
+                throw new IllegalStateException("Unknown destination label: " + label);
+            }
+        }
+        checkForDefaultArrays();
+    }
+
+    private void checkForDefaultArrays() {
+        var arrayDims = arrays.stream()
+                .collect(Collectors.groupingBy(ArrayDim::name, LinkedHashMap::new, Collectors.toSet()));
+        for (var entry: arrayDims.entrySet()) {
+            var name = entry.getKey();
+            var values = entry.getValue();
+            if (values.size() > 1) {
+                throw new IllegalStateException(name + " uses differing number of array dimensions: " + values);
+            }
+            var arrayDim = values.iterator().next();
+            var dimension = dimensionedArrays.get(name);
+            if (dimension != null) {
+                if (!arrayDim.equals(dimension)) {
+                    throw new IllegalStateException(name + " was dimension as: " + dimension + ", but variable expected: " + arrayDim);
+                }
+                continue;
+            }
+            // create array of default size 10 if none has already been DIM'd
+            if (arrayDim.dimensions() != 1) {
+                throw new IllegalStateException("Can only use 1-dimensional arrays without DIMing first");
+            }
+            defaultArrays.add(arrayDim);
+        }
+    }
+
+    public int getLineCount() {
+        return lineIndexes.size();
+    }
+
+    // where the line comes in the program, starting from 0
+    public int getLineIndex(String label) {
+        return lineIndexes.get(label);
+    }
+
+    public Set<String> getTargetedLines() {
+        return Collections.unmodifiableSet(targetedLines);
+    }
+
+    // the lines GOSUBs return to, in return index order, null being the end of the program
+    public List<String> getReturnLines() {
+        return Collections.unmodifiableList(returnLines);
+    }
+
+    public int getReturnIndex(String gosubLine) {
+        return returnIndexes.get(gosubLine);
+    }
+
+    public boolean isEndTargeted() {
+        return endTargeted;
+    }
+
+    public List<Object> getDataConstants() {
+        return Collections.unmodifiableList(dataConstants);
+    }
+
+    public NavigableMap<Integer, Integer> getDataPositions() {
+        return Collections.unmodifiableNavigableMap(dataPositions);
+    }
+
+    // scalar variables that are used, whether or not they are ever assigned
+    public Set<VarName> getVariables() {
+        return Collections.unmodifiableSet(variables);
+    }
+
+    // arrays that are used, whether or not they are ever assigned
+    public Set<ArrayDim> getArrays() {
+        return Collections.unmodifiableSet(arrays);
+    }
+
+    // arrays that are DIM'd
+    public Collection<ArrayDim> getDimensionedArrays() {
+        return Collections.unmodifiableCollection(dimensionedArrays.values());
+    }
+
+    // arrays that are used without being DIM'd first
+    public List<ArrayDim> getDefaultArrays() {
+        return Collections.unmodifiableList(defaultArrays);
+    }
+
+    // the number of FOR statements, each of which needs locals for its end and increment
+    public int getForLoops() {
+        return forLoops;
+    }
+
+    @Override
+    public void visit(Line line) {
+        if (gosubLine != null) {
+            returnIndexes.put(gosubLine, returnLines.size());
+            returnLines.add(line.label());
+            targetedLines.add(line.label());
+            gosubLine = null;
+        }
+        currentLine = line;
+        lineIndexes.putIfAbsent(line.label(), lineIndexes.size());
+        super.visit(line);
+    }
+
+    @Override
+    public void visit(GotoStatement statement) {
+        targetedLines.add(statement.destinationLabel());
+    }
+
+    @Override
+    public void visit(OnGotoStatement statement) {
+        super.visit(statement);
+        targetedLines.addAll(statement.destinationLabels());
+    }
+
+    @Override
+    public void visit(GoSubStatement statement) {
+        targetedLines.add(statement.destinationLabel());
+        // all the GOSUBs on a line return to the start of the next line
+        gosubLine = currentLine.label();
+    }
+
+    @Override
+    public void visit(DataStatement statement) {
+        dataPositions.put(currentLine.numericLabel(), dataConstants.size());
+        dataConstants.addAll(statement.constants());
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+        visitVarName(new VarName(statement.varname(), DataType.FLOAT));
+        super.visit(statement);
+        forLoops++;
+    }
+
+    @Override
+    public void visit(DimStatement statement) {
+        for (var array: statement.arrays()) {
+            var dim = array.getArrayDimensions();
+            if (dimensionedArrays.put(dim.name(), dim) != null) {
+                throw new IllegalStateException("Cannot re-dim array: " + array.name());
+            }
+        }
+        super.visit(statement);
+    }
+
+    // every variable used (read before it's assigned or not) needs initialising, as do their indexes' variables
+    @Override
+    protected void visitVarName(VarName varName) {
+        if (varName.isArray()) {
+            arrays.add(varName.getArrayDimensions());
+        } else {
+            variables.add(varName);
+        }
+        super.visitVarName(varName);
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ Runs many BASIC sessions at once, each program with its own input and output.
+ Every session gets its own thread (a virtual thread when the JVM has them, so
+ thousands of mostly idle sessions are cheap), but only so many run at once:
+ the rest queue in arrival order on a fair semaphore.  A session waiting for
+ input isn't running, so it gives up its place while it waits and queues again
+ once there's input to run with.
+
+ Sessions are limited in how much they can output, how much memory they can
+ use and how long they can run.
+ The time limit is checked on every write, by the program itself as it loops
+ (see BasProgram.setDeadline) and, for programs waiting on input, enforced by
+ closing the session's input.
+
+ Given a ProgramMonitor, each session's program is registered with it (as
+ session-<n>) while it runs, so it can be watched over JMX.  The engine should
+ compile monitored programs, or lines run and the current line are always 0.
+
+ listen() adds a socket front end on the loopback interface.  A client sends a
+ program followed by a line containing just RUN, anything after that is the
+ program's input and the program's output is sent back until the program ends
+ and the connection is closed.
+ */
+public class ProgramHost implements Closeable {
+    private static final String RUN = "RUN";
+
+    private final BasicEngine engine;
+    private final Limits limits;
+    private final ExecutorService sessions = newSessionExecutor();
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "session-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore running;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger completedSessions = new AtomicInteger();
+    private final AtomicInteger failedSessions = new AtomicInteger();
+    private final AtomicInteger sessionNumbers = new AtomicInteger();
+    private final ProgramMonitor monitor;
+    private ServerSocket serverSocket;
+
+    public ProgramHost(BasicEngine engine, Limits limits) {
+        this(engine, limits, null);
+    }
+
+    public ProgramHost(BasicEngine engine, Limits limits, ProgramMonitor monitor) {
+        this.engine = engine;
+        this.limits = limits;
+        this.monitor = monitor;
+        this.running = new Semaphore(limits.maxRunningSessions(), true);
+    }
+
+    private static ExecutorService newSessionExecutor() {
+        try {
+            // only available from Java 21
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public Future<?> submit(CharSequence source, InputStream in, OutputStream out) {
+        return sessions.submit(() -> {
+            runSession(source, in, out, in);
+            return null;
+        });
+    }
+
+    /*
+     stopInput is closed if the session runs out of time, waking up a program
+     blocked reading input
+     */
+    private void runSession(CharSequence source, InputStream in, OutputStream out, Closeable stopInput) throws IOException, InterruptedException {
+        activeSessions.incrementAndGet();
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            activeSessions.decrementAndGet();
+            throw e;
+        }
+        var deadline = System.nanoTime() + limits.maxSessionTime().toNanos();
+        var closeInput = deadlines.schedule(() -> {
+            stopInput.close();
+            return null;
+        }, limits.maxSessionTime().toNanos(), TimeUnit.NANOSECONDS);
+        var printOut = new PrintStream(new LimitedOutputStream(out, limits.maxOutputBytes(), deadline), false, StandardCharsets.UTF_8);
+        try {
+            var program = engine.compile(source).newInstance(new Scanner(new FlushingInputStream(in, printOut, running)), printOut);
+            program.setDeadline(deadline);
+            program.setMemoryQuota(limits.maxMemoryBytes());
+            program.setMaxStringLength((int) Math.min(Integer.MAX_VALUE, limits.maxMemoryBytes() / Character.BYTES));
+            if (monitor != null) {
+                var registration = monitor.register("session-" + sessionNumbers.incrementAndGet(), program);
+                try {
+                    program.run();
+                } finally {
+                    registration.close();
+                }
+            } else {
+                program.run();
+            }
+            completedSessions.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedSessions.incrementAndGet();
+            printOut.flush();
+            // bypass the limits so the client always finds out what went wrong
+            var message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            out.write(("ERROR: " + message + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            printOut.flush();
+            out.flush();
+            closeInput.cancel(false);
+            running.release();
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /*
+     Starts accepting sessions on the loopback interface, returning the port
+     (so port 0 can be used to pick any free one)
+     */
+    public synchronized int listen(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Already listening on: " + serverSocket.getLocalPort());
+        }
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        var acceptor = new Thread(this::acceptSessions, "session-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptSessions() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                sessions.submit(() -> {
+                    handleConnection(socket);
+                    return null;
+                });
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) throws IOException, InterruptedException {
+        try (socket) {
+            var in = new BufferedInputStream(socket.getInputStream());
+            var out = new BufferedOutputStream(socket.getOutputStream());
+            var source = new StringBuilder();
+            String line;
+            while ((line = readLine(in)) != null && !line.strip().equals(RUN)) {
+                source.append(line).append('\n');
+            }
+            // closing the socket's input stream would close the socket, so just shut down input
+            runSession(source, in, out, socket::shutdownInput);
+        }
+    }
+
+    // reads a byte at a time, so nothing past the line is consumed from in (the rest is the program's input)
+    private String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public int getCompletedSessions() {
+        return completedSessions.get();
+    }
+
+    public int getFailedSessions() {
+        return failedSessions.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        sessions.shutdown();
+        deadlines.shutdown();
+    }
+
+    /*
+     maxMemoryBytes limits the arrays a session can DIM and the strings it
+     stores in variables and arrays, all together
+     */
+    public record Limits(int maxRunningSessions, long maxOutputBytes, Duration maxSessionTime, long maxMemoryBytes) {
+
+    }
+
+    public static class SessionLimitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public SessionLimitException(String message) {
+            super(message);
+        }
+    }
+
+    /*
+     Flushes the program's output before waiting for input, so an interactive
+     client sees any prompt before it has to answer it, and releases the
+     session's running permit while it waits, so sessions sat at a prompt don't
+     stop others running.  The permit is always held again by the time a read
+     returns (or throws), so the session can release it as usual when it ends.
+     */
+    static class FlushingInputStream extends FilterInputStream {
+        private final PrintStream out;
+        private final Semaphore running;
+
+        FlushingInputStream(InputStream in, PrintStream out, Semaphore running) {
+            super(in);
+            this.out = out;
+            this.running = running;
+        }
+
+        @Override
+        public int read() throws IOException {
+            out.flush();
+            if (in.available() > 0) {
+                return super.read();
+            }
+            running.release();
+            try {
+                return super.read();
+            } finally {
+                running.acquireUninterruptibly();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            out.flush();
+            if (in.available() > 0) {
+                return super.read(b, off, len);
+            }
+            running.release();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                running.acquireUninterruptibly();
+            }
+        }
+    }
+
+    /*
+     Throws an (unchecked, so PrintStream doesn't swallow it) exception once too
+     much has been written or the session has run out of time
+     */
+    static class LimitedOutputStream extends FilterOutputStream {
+        private final long maxBytes;
+        private final long deadline;
+        private long written;
+
+        LimitedOutputStream(OutputStream out, long maxBytes, long deadline) {
+            super(out);
+            this.maxBytes = maxBytes;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimits(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLimits(len);
+            out.write(b, off, len);
+        }
+
+        private void checkLimits(int length) {
+            written += length;
+            if (written > maxBytes) {
+                throw new SessionLimitException("Output limit of " + maxBytes + " bytes exceeded");
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new SessionLimitException("Time limit exceeded");
+            }
+        }
+    }
+}
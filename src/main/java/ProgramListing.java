@@ -40,53 +40,74 @@ import ast.StringConstant;
 import ast.VarName;
 import ast.Variable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
 /*
  Just a simple visitor to walk the AST and print it out
  */
 public class ProgramListing implements AstVisitor {
+    private final PrintStream out;
+
+    public ProgramListing() {
+        this(System.out);
+    }
+
+    public ProgramListing(PrintStream out) {
+        this.out = out;
+    }
+
+    // the source of a single line, without the trailing newline
+    public static String listing(Line line) {
+        var text = new ByteArrayOutputStream();
+        var listing = new ProgramListing(new PrintStream(text, true, StandardCharsets.UTF_8));
+        listing.visit(line);
+        return text.toString(StandardCharsets.UTF_8).stripTrailing();
+    }
 
     @Override
     public void visit(Line line) {
-        System.out.print(line.label() + " ");
+        out.print(line.label() + " ");
         var separator = false;
         for (var statement: line.statements()) {
             if (separator) {
-                System.out.print(" : ");
+                out.print(" : ");
             }
             statement.visit(this);
             if (!separator) {
                 separator = true;
             }
         }
-        System.out.println();
+        out.println();
     }
 
     public void visit(VarName varName) {
-        System.out.print(varName.name().replace("()", ""));
+        out.print(varName.name().replace("()", ""));
         if (varName.isArray()) {
-            System.out.print("(");
+            out.print("(");
             var first = true;
             for (var index: varName.indexes()) {
                 if (!first) {
-                    System.out.print(",");
+                    out.print(",");
                 }
                 index.visit(this);
                 first = false;
             }
-            System.out.print(")");
+            out.print(")");
         }
     }
 
     @Override
     public void visit(PrintStatement statement) {
-        System.out.print("PRINT ");
+        out.print("PRINT ");
         for (var printable: statement.printables()) {
             if (printable == PrintSeperator.SPACE) {
-                System.out.print(" ");
+                out.print(" ");
             } else if (printable == PrintSeperator.NONE) {
-                System.out.print(";");
+                out.print(";");
             } else if (printable == PrintSeperator.ZONE) {
-                System.out.print(",");
+                out.print(",");
             } else {
                 ((Expression) printable).visit(this);
             }
@@ -95,52 +116,52 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(GotoStatement statement) {
-        System.out.print("GOTO " + statement.destinationLabel());
+        out.print("GOTO " + statement.destinationLabel());
     }
 
     @Override
     public void visit(GoSubStatement statement) {
-        System.out.print("GOSUB " + statement.destinationLabel());
+        out.print("GOSUB " + statement.destinationLabel());
     }
 
     @Override
     public void visit(ReturnStatement statement) {
-        System.out.print("RETURN");
+        out.print("RETURN");
     }
 
     @Override
     public void visit(OnGotoStatement statement) {
-        System.out.print("ON ");
+        out.print("ON ");
         statement.expression().visit(this);
-        System.out.print(" GOTO ");
-        System.out.print(String.join(",", statement.destinationLabels()));
+        out.print(" GOTO ");
+        out.print(String.join(",", statement.destinationLabels()));
     }
 
     @Override
     public void visit(IfStatement statement) {
-        System.out.print("IF ");
+        out.print("IF ");
         statement.predicate().visit(this);
-        System.out.print(" THEN ");
+        out.print(" THEN ");
         statement.then().visit(this);
     }
 
     @Override
     public void visit(LetStatement statement) {
         visit(statement.name());
-        System.out.print("=");
+        out.print("=");
         statement.expression().visit(this);
     }
 
     @Override
     public void visit(InputStatement statement) {
-        System.out.print("INPUT ");
+        out.print("INPUT ");
         if (statement.prompt() != null) {
-            System.out.printf("\"%s\";", statement.prompt());
+            out.printf("\"%s\";", statement.prompt());
         }
         var first = true;
         for (var name: statement.names()) {
             if (!first) {
-                System.out.print(",");
+                out.print(",");
             }
             visit(name);
             first = false;
@@ -149,43 +170,43 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(DimStatement statement) {
-        System.out.print("DIM ");
+        out.print("DIM ");
         var firstArray = true;
         for (var array: statement.arrays()) {
             if (!firstArray) {
-                System.out.print(",");
+                out.print(",");
             }
-            System.out.print(array.name() + "(");
+            out.print(array.name() + "(");
             var first = true;
             for (var size : array.sizes()) {
                 if (!first) {
-                    System.out.print(",");
+                    out.print(",");
                 }
                 size.visit(this);
                 first = false;
             }
-            System.out.print(")");
+            out.print(")");
             firstArray = false;
         }
     }
 
     @Override
     public void visit(RemarkStatement statement) {
-        System.out.print("REM " + statement.comment());
+        out.print("REM " + statement.comment());
     }
 
     @Override
     public void visit(DataStatement statement) {
-        System.out.print("DATA ");
+        out.print("DATA ");
         var first = true;
         for (var constant: statement.constants()) {
             if (!first) {
-                System.out.print(",");
+                out.print(",");
             }
             if (constant instanceof String) {
-                System.out.print("\"" + constant + "\"");
+                out.print("\"" + constant + "\"");
             } else {
-                System.out.print(constant);
+                out.print(constant);
             }
             first = false;
         }
@@ -193,11 +214,11 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(ReadStatement statement) {
-        System.out.print("READ ");
+        out.print("READ ");
         var first = true;
         for (var name: statement.names()) {
             if (!first) {
-                System.out.print(",");
+                out.print(",");
             }
             visit(name);
             first = false;
@@ -206,50 +227,50 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(RestoreStatement statement) {
-        System.out.print("RESTORE");
+        out.print("RESTORE");
         if (statement.label() != null) {
-            System.out.print(" " + statement.label());
+            out.print(" " + statement.label());
         };
     }
 
     @Override
     public void visit(ForStatement statement) {
-        System.out.print("FOR " + statement.varname() + " = ");
+        out.print("FOR " + statement.varname() + " = ");
         statement.start().visit(this);
-        System.out.print(" TO ");
+        out.print(" TO ");
         statement.end().visit(this);
         if (statement.increment() != null) {
-            System.out.print(" STEP ");
+            out.print(" STEP ");
             statement.increment().visit(this);
         }
     }
 
     @Override
     public void visit(NextStatement statement) {
-        System.out.print("NEXT");
+        out.print("NEXT");
         if (!statement.varnames().isEmpty()) {
-            System.out.print(" " + String.join(",", statement.varnames()));
+            out.print(" " + String.join(",", statement.varnames()));
         }
     }
 
     @Override
     public void visit(EndStatement statement) {
-        System.out.print("END");
+        out.print("END");
     }
 
     @Override
     public void visit(StopStatement statement) {
-        System.out.print("STOP");
+        out.print("STOP");
     }
 
     @Override
     public void visit(StringConstant expression) {
-        System.out.print('\"' + expression.constant() + '\"');
+        out.print('\"' + expression.constant() + '\"');
     }
 
     @Override
     public void visit(FloatConstant expression) {
-        System.out.print(expression.constant());
+        out.print(expression.constant());
     }
 
     @Override
@@ -259,9 +280,9 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(FloatNegation expression) {
-        System.out.print("-(");
+        out.print("-(");
         expression.expr().visit(this);
-        System.out.print(")");
+        out.print(")");
     }
 
     @Override
@@ -331,23 +352,23 @@ public class ProgramListing implements AstVisitor {
 
     @Override
     public void visit(FunctionCall expression) {
-        System.out.print(expression.fn().name() + "(");
+        out.print(expression.fn().name() + "(");
         var first = true;
         for (var arg: expression.args()) {
             if (!first) {
-                System.out.print(", ");
+                out.print(", ");
             }
             arg.visit(this);
             first = false;
         }
-        System.out.print(")");
+        out.print(")");
     }
 
     private void binaryExpression(String operator, BinaryExpression expression) {
-        System.out.print("(");
+        out.print("(");
         expression.lhs().visit(this);
-        System.out.print(operator);
+        out.print(operator);
         expression.rhs().visit(this);
-        System.out.print(")");
+        out.print(")");
     }
 }
@@ -0,0 +1,208 @@
+import runtime.BasProgram;
+import runtime.ProgramStatus;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/*
+ Makes running programs visible over JMX, each registered program as a
+ <domain>:type=Program,name=<name> MXBean and all of them together as
+ <domain>:type=Programs.  Programs keep their own numbers as they run (see
+ BasProgram.getStatus), nothing is collected until JMX asks for an attribute,
+ so monitoring costs the running programs nothing beyond keeping track of
+ the current line (see JavaASM.Options).
+ */
+public class ProgramMonitor implements Closeable {
+    private final MBeanServer server;
+    private final String domain;
+    private final ObjectName programsName;
+    private final Map<ObjectName, BasProgram> programs = new ConcurrentHashMap<>();
+
+    public ProgramMonitor() {
+        this(ManagementFactory.getPlatformMBeanServer(), "basic");
+    }
+
+    public ProgramMonitor(MBeanServer server, String domain) {
+        this.server = server;
+        this.domain = domain;
+        this.programsName = objectName("type=Programs");
+        registerMBean(new Programs(), programsName);
+    }
+
+    /*
+     Registers a program under name (which must be unique among the registered
+     programs) until the returned Registration is closed
+     */
+    public Registration register(String name, BasProgram program) {
+        var objectName = objectName("type=Program,name=" + ObjectName.quote(name));
+        registerMBean(new Program(name, program), objectName);
+        programs.put(objectName, program);
+        return () -> {
+            programs.remove(objectName);
+            unregisterMBean(objectName);
+        };
+    }
+
+    public int getProgramCount() {
+        return programs.size();
+    }
+
+    @Override
+    public void close() {
+        programs.keySet().forEach(this::unregisterMBean);
+        programs.clear();
+        unregisterMBean(programsName);
+    }
+
+    private ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(domain + ":" + properties);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void registerMBean(Object mbean, ObjectName objectName) {
+        try {
+            server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register: " + objectName, e);
+        }
+    }
+
+    private void unregisterMBean(ObjectName objectName) {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // already gone
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister: " + objectName, e);
+        }
+    }
+
+    private long sum(ToLongFunction<ProgramStatus> value) {
+        return programs.values().stream()
+            .map(BasProgram::getStatus)
+            .mapToLong(value)
+            .sum();
+    }
+
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public interface ProgramMXBean {
+        String getName();
+
+        long getLinesExecuted();
+
+        int getCurrentLine();
+
+        int getGosubDepth();
+
+        int getDataPointer();
+
+        long getCharactersPrinted();
+
+        long getInputWaitMillis();
+
+        long getWallTimeMillis();
+
+        boolean isRunning();
+
+        boolean isWaitingForInput();
+    }
+
+    public interface ProgramsMXBean {
+        int getProgramCount();
+
+        long getTotalLinesExecuted();
+
+        long getTotalCharactersPrinted();
+
+        long getTotalInputWaitMillis();
+    }
+
+    private record Program(String name, BasProgram program) implements ProgramMXBean {
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getLinesExecuted() {
+            return program.getStatus().linesExecuted();
+        }
+
+        @Override
+        public int getCurrentLine() {
+            return program.getStatus().currentLine();
+        }
+
+        @Override
+        public int getGosubDepth() {
+            return program.getStatus().gosubDepth();
+        }
+
+        @Override
+        public int getDataPointer() {
+            return program.getStatus().dataPointer();
+        }
+
+        @Override
+        public long getCharactersPrinted() {
+            return program.getStatus().charactersPrinted();
+        }
+
+        @Override
+        public long getInputWaitMillis() {
+            return program.getStatus().inputWaitNanos() / 1_000_000;
+        }
+
+        @Override
+        public long getWallTimeMillis() {
+            return program.getStatus().wallNanos() / 1_000_000;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return program.getStatus().running();
+        }
+
+        @Override
+        public boolean isWaitingForInput() {
+            return program.getStatus().waitingForInput();
+        }
+    }
+
+    private class Programs implements ProgramsMXBean {
+        @Override
+        public int getProgramCount() {
+            return programs.size();
+        }
+
+        @Override
+        public long getTotalLinesExecuted() {
+            return sum(ProgramStatus::linesExecuted);
+        }
+
+        @Override
+        public long getTotalCharactersPrinted() {
+            return sum(ProgramStatus::charactersPrinted);
+        }
+
+        @Override
+        public long getTotalInputWaitMillis() {
+            return sum(ProgramStatus::inputWaitNanos) / 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import ast.Line;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/*
+ The lines of a program for generating code a line at a time (see
+ Parser.streamLines), each one type checked as it's parsed and then, at O1
+ and above, constant folded.  Lines are checked before they're folded, as
+ they are when compiling the whole program, so folding can't hide a type
+ error.  Only the types of the line last iterated over are kept, which is
+ all JavaASM needs as it generates each line straight after getting it.
+ */
+public class StreamedLines implements Iterable<Line> {
+    private final Iterable<Line> lines;
+    private final ConstantFolding constantFolding;
+    private Line lastLine;
+    private TypeChecker.Types lastTypes;
+
+    public StreamedLines(Parser parser, CharSequence source, OptimisationLevel level) throws IOException {
+        this.lines = parser.streamLines(source);
+        this.constantFolding = level.includes(OptimisationLevel.O1) ? new ConstantFolding() : null;
+    }
+
+    @Override
+    public Iterator<Line> iterator() {
+        var iterator = lines.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Line next() {
+                var line = iterator.next();
+                var types = TypeChecker.check(line);
+                if (constantFolding != null) {
+                    var folded = constantFolding.transform(line);
+                    types = TypeChecker.afterPasses(line, types, folded);
+                    line = folded;
+                }
+                lastLine = line;
+                lastTypes = types;
+                return line;
+            }
+        };
+    }
+
+    // for JavaASM's lineTypes
+    public TypeChecker.Types typesOf(Line line) {
+        return line == lastLine ? lastTypes : TypeChecker.check(line);
+    }
+}
@@ -1,14 +1,20 @@
-import runtime.FunctionDef;
-
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Set;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/*
+ Splits source into tokens.  The whole source is held as a CharSequence
+ (a String, CharBuffer or a memory mapped file) and scanned by index, so
+ the text of a token is sliced out of the source once it is complete rather
+ than being built up a character at a time.
+ */
 public class Tokenizer {
     private static final Set<String> SYMBOLS = Set.of(
         "=", "<>", "<", "<=", ">", ">=", "+", "-", "*", "/", "(", ")", ":", ",", ";", "^"
@@ -20,27 +26,64 @@ public class Tokenizer {
             .map(ch -> String.valueOf((char) (int) ch))
             .collect(Collectors.joining());
     private static final String NAME_SUFFIXES = "$";
-    private final Set<String> keywords = Arrays.stream(Keyword.values())
-        .map(String::valueOf)
-        .collect(Collectors.toSet());
-    private final Set<String> functions = FunctionDef.getFunctionDefs().stream()
-        .map(FunctionDef::name)
-        .collect(Collectors.toSet());
-    private final PushbackReader reader;
+    private final KeywordTrie trie = KeywordTrie.INSTANCE;
+    private final CharSequence source;
+    private final int length;
+    private int position;
     private Token peeked;
 
-    public Tokenizer(Reader reader) {
-        this.reader = new PushbackReader(reader);
+    public Tokenizer(Reader reader) throws IOException {
+        this(readFully(reader));
+    }
+
+    public Tokenizer(CharSequence source) {
+        this(source, 0, source.length());
+    }
+
+    /*
+     Tokenizes just the characters from start (inclusive) to end (exclusive)
+     */
+    public Tokenizer(CharSequence source, int start, int end) {
+        this.source = source;
+        this.position = start;
+        this.length = end;
     }
 
-    public Token peek() throws IOException {
+    /*
+     Maps a source file into memory.  BASIC source is almost always plain ASCII, in
+     which case the mapped bytes are used as the characters directly with no copying,
+     otherwise the file is decoded as UTF-8.
+     */
+    public static CharSequence mapFile(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (var i = 0; i < bytes.limit(); i++) {
+                if (bytes.get(i) < 0) {
+                    return StandardCharsets.UTF_8.decode(bytes);
+                }
+            }
+            return new AsciiCharSequence(bytes);
+        }
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        var builder = new StringBuilder();
+        var buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+
+    public Token peek() {
         if (peeked == null) {
             peeked = readNext();
         }
         return peeked;
     }
 
-    public Token next() throws IOException {
+    public Token next() {
         if (peeked != null) {
             Token next = peeked;
             peeked = null;
@@ -49,112 +92,116 @@ public class Tokenizer {
         return readNext();
     }
 
-    private Token readNext() throws IOException {
+    private Token readNext() {
         while (true) {
-            int c = reader.read();
-            if (c == -1) {
+            if (position >= length) {
                 return new Token(null, Token.Type.EOF);
             }
+            var c = source.charAt(position);
             if (c == '\n') {
+                position++;
                 return new Token("\n", Token.Type.EOL);
             }
             if (Character.isWhitespace(c)) {
+                position++;
                 continue;
             }
+            var start = position;
             if (isUppercaseAlphabetic(c)) {
-                reader.unread(c);
-                String text = consumeAllMatching(
-                    this::isUppercaseAlphaNumeric,
-                    builder -> isKeyword(builder.toString())
-                );
-                if (isKeyword(text)) {
-                    return new Token(text, Token.Type.KEYWORD);
+                var state = KeywordTrie.START;
+                // stop as soon as we've seen a keyword, as BASIC doesn't need spaces between them
+                while (position < length && isUppercaseAlphaNumeric(source.charAt(position))) {
+                    state = trie.next(state, source.charAt(position));
+                    position++;
+                    var keyword = trie.keyword(state);
+                    if (keyword != null) {
+                        return new Token(keyword.name(), Token.Type.KEYWORD);
+                    }
                 }
-                var suffix = reader.read();
-                if (NAME_SUFFIXES.indexOf(suffix) != -1) {
-                    text += (char) suffix;
-                } else {
-                    unreadIfNotEOF(suffix);
+                if (position < length && NAME_SUFFIXES.indexOf(source.charAt(position)) != -1) {
+                    state = trie.next(state, source.charAt(position));
+                    position++;
                 }
 
-                if (isFunction(text)) {
-                    return new Token(text, Token.Type.FUNCTION);
+                var function = trie.function(state);
+                if (function != null) {
+                    return new Token(function, Token.Type.FUNCTION);
                 }
 
-                return new Token(text, Token.Type.NAME);
+                return new Token(slice(start, position), Token.Type.NAME);
             }
             if (isNumeric(c)) {
-                reader.unread(c);
-                String text = consumeAllMatching(this::isNumeric);
-                return new Token(text, Token.Type.NUMBER);
+                while (position < length && isNumeric(source.charAt(position))) {
+                    position++;
+                }
+                return new Token(slice(start, position), Token.Type.NUMBER);
             }
             if (isSymbol(c)) {
-                reader.unread(c);
-                String text = consumeSymbol();
-                return new Token(text, Token.Type.SYMBOL);
+                position += symbolLength(c);
+                return new Token(slice(start, position), Token.Type.SYMBOL);
             }
             if (c == '\"') {
-                String text = consumeAllMatching(ch -> ch != '\"');
-                if (reader.read() != '\"') {
+                var end = indexOf('\"', start + 1);
+                if (end == -1) {
+                    position = length;
                     throw new TokenizingException("Expected end of string");
                 }
-                return new Token(text, Token.Type.STRING);
+                position = end + 1;
+                return new Token(slice(start + 1, end), Token.Type.STRING);
             }
-            throw new TokenizingException("Unexpected character: " + (char) c);
+            throw new TokenizingException("Unexpected character: " + c);
         }
     }
 
-    public String readTillEndOfLine() throws IOException {
-        return consumeAllMatching(c -> c != '\n');
+    /*
+     Tokenizes the whole of source just to count the tokens, skipping remarks the
+     way the parser does.  The parser pulls tokens as it goes, so this is the only
+     way to see how long tokenizing on its own takes.
+     */
+    public static int countTokens(CharSequence source) {
+        var tokenizer = new Tokenizer(source);
+        var count = 0;
+        Token token;
+        while ((token = tokenizer.next()).type() != Token.Type.EOF) {
+            count++;
+            if (token.type() == Token.Type.KEYWORD && token.text().equals(Keyword.REM.name())) {
+                tokenizer.readTillEndOfLine();
+            }
+        }
+        return count;
     }
 
-    private String consumeAllMatching(Predicate<Character> test) throws IOException {
-        return consumeAllMatching(test, s -> false);
+    public String readTillEndOfLine() {
+        var start = position;
+        var end = indexOf('\n', start);
+        position = end == -1 ? length : end;
+        return slice(start, position);
     }
 
-    private String consumeSymbol() throws IOException {
-        StringBuilder builder = new StringBuilder();
-        while (true) {
-            int c = reader.read();
-            if (c != -1 && SYMBOLS.contains(builder.toString() + (char) c)) {
-                builder.append((char) c);
-            } else {
-                unreadIfNotEOF(c);
-                break;
+    private int symbolLength(char c) {
+        if (position + 1 < length) {
+            var next = source.charAt(position + 1);
+            if (c == '<' && (next == '>' || next == '=') || c == '>' && next == '=') {
+                return 2;
             }
         }
-        return builder.toString();
+        return 1;
     }
 
-    private String consumeAllMatching(Predicate<Character> charTest, Predicate<StringBuilder> tokenTest) throws IOException {
-        StringBuilder builder = new StringBuilder();
-        while (true) {
-            int c = reader.read();
-            if (c != -1 && charTest.test((char) c)) {
-                builder.append((char) c);
-            } else {
-                unreadIfNotEOF(c);
-                break;
-            }
-            if (tokenTest.test(builder)) {
-                break;
+    private int indexOf(char c, int from) {
+        for (var i = from; i < length; i++) {
+            if (source.charAt(i) == c) {
+                return i;
             }
         }
-        return builder.toString();
+        return -1;
     }
 
-    private void unreadIfNotEOF(int c) throws IOException {
-        if (c != -1) {
-            reader.unread(c);
+    private String slice(int start, int end) {
+        if (source instanceof String string) {
+            return string.substring(start, end);
         }
-    }
-
-    private boolean isKeyword(String text) {
-        return keywords.contains(text);
-    }
-
-    private boolean isFunction(String text) {
-        return functions.contains(text);
+        return source.subSequence(start, end).toString();
     }
 
     private boolean isUppercaseAlphabetic(int c) {
@@ -173,4 +220,30 @@ public class Tokenizer {
         return SYMBOL_CHARS.indexOf(c) != -1;
     }
 
-}
\ No newline at end of file
+    /*
+     Read only view of ASCII bytes as characters
+     */
+    record AsciiCharSequence(ByteBuffer bytes) implements CharSequence {
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes.get(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiCharSequence(bytes.slice(start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            var chars = new byte[bytes.limit()];
+            bytes.get(0, chars);
+            return new String(chars, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import ast.Addition;
+import ast.AndExpression;
+import ast.AstVisitor;
+import ast.BinaryExpression;
+import ast.DataStatement;
+import ast.DataType;
+import ast.DimStatement;
+import ast.EndStatement;
+import ast.Equals;
+import ast.Expression;
+import ast.FloatConstant;
+import ast.FloatDivision;
+import ast.FloatMultiplication;
+import ast.FloatNegation;
+import ast.FloatPower;
+import ast.FloatSubtraction;
+import ast.ForStatement;
+import ast.FunctionCall;
+import ast.GoSubStatement;
+import ast.GotoStatement;
+import ast.GreaterThan;
+import ast.GreaterThanEquals;
+import ast.IfStatement;
+import ast.InputStatement;
+import ast.LessThan;
+import ast.LessThanEquals;
+import ast.LetStatement;
+import ast.Line;
+import ast.NextStatement;
+import ast.NotEquals;
+import ast.OnGotoStatement;
+import ast.OrExpression;
+import ast.PrintStatement;
+import ast.Program;
+import ast.ReadStatement;
+import ast.RemarkStatement;
+import ast.RestoreStatement;
+import ast.ReturnStatement;
+import ast.StopStatement;
+import ast.StringConstant;
+import ast.VarName;
+import ast.Variable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Semantic analysis pass that works out the type of every expression exactly
+ once (bottom up) and records it in a side table keyed on node identity, so
+ code generation can just look types up.  Type errors don't stop the pass, an
+ expression with an error is given its most likely type and checking carries
+ on, so all the errors in a program are reported together.
+ */
+public class TypeChecker implements AstVisitor {
+    private final Map<Expression, DataType> types = new IdentityHashMap<>();
+    private final List<String> errors = new ArrayList<>();
+    private final Types checked;
+    private String currentLineNumber;
+
+    private TypeChecker(Types checked) {
+        this.checked = checked;
+    }
+
+    public static Types check(Program program) {
+        var event = CompilePhaseEvent.begin("type-check", null);
+        var typeChecker = new TypeChecker(null);
+        program.visit(typeChecker);
+        event.commit();
+        return typeChecker.result();
+    }
+
+    public static Types check(Line line) {
+        var typeChecker = new TypeChecker(null);
+        typeChecker.visit(line);
+        return typeChecker.result();
+    }
+
+    /*
+     The types of what the optimisation passes made of a checked program.  The
+     passes keep any node they don't change (see AstTransformer) and types are
+     keyed on the nodes, so only the expressions a pass actually built need
+     typing, the rest already have their types from checked
+     */
+    public static Types afterPasses(Program checked, Types types, Program optimised) {
+        if (optimised == checked) {
+            return types;
+        }
+        var event = CompilePhaseEvent.begin("type-check", null);
+        var typeChecker = new TypeChecker(types);
+        optimised.visit(typeChecker);
+        event.commit();
+        return typeChecker.result();
+    }
+
+    // as afterPasses(Program...) for a single line
+    public static Types afterPasses(Line checked, Types types, Line optimised) {
+        if (optimised == checked) {
+            return types;
+        }
+        var typeChecker = new TypeChecker(types);
+        typeChecker.visit(optimised);
+        return typeChecker.result();
+    }
+
+    private Types result() {
+        if (!errors.isEmpty()) {
+            throw new TypeCheckingException(errors);
+        }
+        return new Types(types, checked);
+    }
+
+    @Override
+    public void visit(Line line) {
+        currentLineNumber = line.label();
+        for (var statement: line.statements()) {
+            statement.visit(this);
+        }
+    }
+
+    @Override
+    public void visit(PrintStatement statement) {
+        for (var printable: statement.printables()) {
+            if (printable instanceof Expression expression) {
+                typeOf(expression);
+            }
+        }
+    }
+
+    @Override
+    public void visit(GotoStatement statement) {
+    }
+
+    @Override
+    public void visit(OnGotoStatement statement) {
+        expect(DataType.FLOAT, statement.expression());
+    }
+
+    @Override
+    public void visit(GoSubStatement statement) {
+    }
+
+    @Override
+    public void visit(ReturnStatement statement) {
+    }
+
+    @Override
+    public void visit(IfStatement statement) {
+        expect(DataType.FLOAT, statement.predicate());
+        statement.then().visit(this);
+    }
+
+    @Override
+    public void visit(RemarkStatement statement) {
+    }
+
+    @Override
+    public void visit(DataStatement statement) {
+    }
+
+    @Override
+    public void visit(ReadStatement statement) {
+        statement.names().forEach(this::checkIndexes);
+    }
+
+    @Override
+    public void visit(RestoreStatement statement) {
+    }
+
+    @Override
+    public void visit(EndStatement statement) {
+    }
+
+    @Override
+    public void visit(StopStatement statement) {
+    }
+
+    @Override
+    public void visit(ForStatement statement) {
+        if (DataType.fromVarName(statement.varname()) != DataType.FLOAT) {
+            error("FOR loop variable must be of type FLOAT: " + statement.varname());
+        }
+        expect(DataType.FLOAT, statement.start());
+        expect(DataType.FLOAT, statement.end());
+        if (statement.increment() != null) {
+            expect(DataType.FLOAT, statement.increment());
+        }
+    }
+
+    @Override
+    public void visit(NextStatement statement) {
+    }
+
+    @Override
+    public void visit(LetStatement statement) {
+        var name = statement.name();
+        checkIndexes(name);
+        var expression = statement.expression();
+        if (typeOf(expression) != name.dataType()) {
+            error("Expected " + name.dataType() + " expression, but got: " + expression);
+        }
+    }
+
+    @Override
+    public void visit(InputStatement statement) {
+        statement.names().forEach(this::checkIndexes);
+    }
+
+    @Override
+    public void visit(DimStatement statement) {
+        for (var array: statement.arrays()) {
+            for (var size: array.sizes()) {
+                expect(DataType.FLOAT, size);
+            }
+        }
+    }
+
+    @Override
+    public void visit(StringConstant expression) {
+        types.put(expression, DataType.STRING);
+    }
+
+    @Override
+    public void visit(FloatConstant expression) {
+        types.put(expression, DataType.FLOAT);
+    }
+
+    @Override
+    public void visit(Variable expression) {
+        checkIndexes(expression.name());
+        types.put(expression, expression.name().dataType());
+    }
+
+    @Override
+    public void visit(FloatNegation expression) {
+        expect(DataType.FLOAT, expression.expr());
+        types.put(expression, DataType.FLOAT);
+    }
+
+    @Override
+    public void visit(Equals expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(NotEquals expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(GreaterThan expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(GreaterThanEquals expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(LessThan expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(LessThanEquals expression) {
+        comparison(expression);
+    }
+
+    @Override
+    public void visit(AndExpression expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(OrExpression expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(Addition expression) {
+        // works for both FLOAT (add) and STRING (concatenate)
+        types.put(expression, sameTypes(expression));
+    }
+
+    @Override
+    public void visit(FloatSubtraction expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(FloatMultiplication expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(FloatDivision expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(FloatPower expression) {
+        floatOperation(expression);
+    }
+
+    @Override
+    public void visit(FunctionCall expression) {
+        var fn = expression.fn();
+        var argTypes = expression.args().stream()
+            .map(this::typeOf)
+            .toList();
+        if (!fn.argTypes().equals(argTypes)) {
+            error("Wrong args type for: " + fn.name() + " expected: " + fn.argTypes() + ", but got: " + argTypes);
+        }
+        types.put(expression, fn.returnType());
+    }
+
+    private void comparison(BinaryExpression expression) {
+        // operands can be compared as FLOATs or STRINGs, but the result is always a FLOAT
+        sameTypes(expression);
+        types.put(expression, DataType.FLOAT);
+    }
+
+    private void floatOperation(BinaryExpression expression) {
+        expect(DataType.FLOAT, expression.lhs());
+        expect(DataType.FLOAT, expression.rhs());
+        types.put(expression, DataType.FLOAT);
+    }
+
+    private DataType sameTypes(BinaryExpression expression) {
+        var lhs = typeOf(expression.lhs());
+        var rhs = typeOf(expression.rhs());
+        if (lhs != rhs) {
+            error("Mismatched types " + lhs + " != " + rhs + " in: " + expression);
+        }
+        return lhs;
+    }
+
+    private void checkIndexes(VarName name) {
+        for (var index: name.indexes()) {
+            if (typeOf(index) != DataType.FLOAT) {
+                error("Array indexes must be of type FLOAT");
+            }
+        }
+    }
+
+    private void expect(DataType expected, Expression expression) {
+        var actual = typeOf(expression);
+        if (actual != expected) {
+            error("Expected " + expected + " expression, but got: " + expression);
+        }
+    }
+
+    private DataType typeOf(Expression expression) {
+        // anything already checked was checked along with everything under it
+        var dataType = checked == null ? null : checked.find(expression);
+        if (dataType != null) {
+            return dataType;
+        }
+        expression.visit(this);
+        return types.get(expression);
+    }
+
+    private void error(String message) {
+        errors.add("Line " + currentLineNumber + ": " + message);
+    }
+
+    /*
+     After the optimisation passes only the expressions they built are held
+     here, anything else is looked up in the types from before the passes
+     */
+    public static class Types {
+        private final Map<Expression, DataType> types;
+        private final Types checked;
+
+        Types(Map<Expression, DataType> types, Types checked) {
+            this.types = types;
+            this.checked = checked;
+        }
+
+        public DataType of(Expression expression) {
+            var dataType = find(expression);
+            if (dataType == null) {
+                throw new IllegalStateException("Expression has not been type checked: " + expression);
+            }
+            return dataType;
+        }
+
+        private DataType find(Expression expression) {
+            var dataType = types.get(expression);
+            if (dataType == null && checked != null) {
+                return checked.find(expression);
+            }
+            return dataType;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.List;
+
+public class TypeCheckingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public TypeCheckingException(List<String> errors) {
+        super(String.join("\n", errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
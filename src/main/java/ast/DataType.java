@@ -10,11 +10,4 @@ public enum DataType {
         }
         return DataType.FLOAT;
     }
-
-    public static DataType ensureSame(DataType lhs, DataType rhs) {
-        if (lhs != rhs) {
-            throw new IllegalArgumentException(lhs + " != " + rhs);
-        }
-        return lhs;
-    }
 }
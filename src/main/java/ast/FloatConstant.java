@@ -1,11 +1,6 @@
 package ast;
 
 public record FloatConstant(float constant) implements Expression {
-    @Override
-    public DataType getDataType() {
-        return DataType.FLOAT;
-    }
-
     @Override
     public void visit(AstVisitor visitor) {
         visitor.visit(this);
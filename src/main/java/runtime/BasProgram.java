@@ -0,0 +1,69 @@
+package runtime;
+
+import java.io.PrintStream;
+import java.util.Scanner;
+
+/*
+ A compiled BASIC program, as seen by the code that runs it.  Every generated
+ class implements this (via BasRuntime), so programs can be set up and run
+ without any reflection.
+ */
+public interface BasProgram extends Runnable {
+    Scanner getIn();
+
+    void setIn(Scanner in);
+
+    PrintStream getOut();
+
+    void setOut(PrintStream out);
+
+    /*
+     Only for programs compiled to be resumable, which don't read input from
+     the Scanner but instead return from run() when they need more.  Offered
+     lines are read the same way as the Scanner's, so a line can answer
+     several numeric INPUTs, then calling run() again carries on from where
+     the program left off.
+     */
+    void offerInput(String line);
+
+    boolean isWaitingForInput();
+
+    /*
+     Only for programs compiled with a step budget, where every backward jump
+     (GOTO or GOSUB to an earlier line, NEXT and RETURN) is a step.  Once the
+     budget is used up, or the deadline (a System.nanoTime() value) has passed,
+     the program throws a BudgetExceededException.  The deadline is only
+     checked every few thousand steps.
+     */
+    void setStepBudget(long steps);
+
+    void setDeadline(long nanoTime);
+
+    /*
+     Only for programs compiled to be memory limited.  Limits the total
+     (estimated) size of the arrays a program can DIM and the strings it
+     stores, after which a MemoryQuotaExceededException is thrown
+     */
+    void setMemoryQuota(long bytes);
+
+    /*
+     Limits the length of strings built by joining strings together or TAB,
+     longer ones throw a MemoryQuotaExceededException
+     */
+    void setMaxStringLength(int length);
+
+    // makes RND return the same numbers every run
+    void setRandomSeed(long seed);
+
+    // only for programs compiled with profiling, otherwise null
+    ProfileCounts getProfile();
+
+    /*
+     What the program is up to, for monitoring.  Can be called from any thread
+     while the program runs: each number is one the program really had, but
+     as they're read one at a time rather than together they needn't all be
+     from the same moment.  linesExecuted and currentLine
+     are only kept by programs compiled with monitoring (see JavaASM.Options).
+     */
+    ProgramStatus getStatus();
+}
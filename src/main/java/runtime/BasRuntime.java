@@ -1,6 +1,8 @@
 package runtime;
 
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.text.MessageFormat;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -13,19 +15,99 @@ import java.util.Scanner;
  provides methods that are useful for implementing some functionality,
  without having to manually create lots of byte code
  */
-public class BasRuntime implements Runnable {
+public class BasRuntime implements BasProgram {
     private static final int PRINT_ZONE_WIDTH = 14;
-    // these are here so we can swap them out in tests
-    private Scanner in = new Scanner(System.in);
+    private static final int STEPS_BETWEEN_CHECKS = 4096;
+    // rough sizes, only used to estimate how much memory an array takes up
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 8;
+    /*
+     What getStatus() reports is written by the thread running the program and
+     read by whichever thread asks (a JMX thread for ProgramMonitor), so these
+     are written and read opaquely: nothing is ordered, but longs can't tear
+     and a value written is always seen eventually, while writes cost no more
+     than plain ones on x86 and are cheap elsewhere.  The program thread can
+     read its own writes plainly.  They're passed this as an Object, as the
+     call's type would otherwise name the generated class, which can't be
+     looked up by name when it's hidden.
+     */
+    private static final VarHandle LINES_EXECUTED;
+    private static final VarHandle CURRENT_LINE;
+    private static final VarHandle GOSUB_DEPTH;
+    private static final VarHandle NEXT_DATA_PTR;
+    private static final VarHandle CHARACTERS_PRINTED;
+    private static final VarHandle INPUT_WAIT_NANOS;
+    private static final VarHandle FIRST_START;
+    private static final VarHandle LAST_END;
+    private static final VarHandle RUNNING;
+    private static final VarHandle RESUME_POINT;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            var runtime = lookup.lookupClass();
+            LINES_EXECUTED = lookup.findVarHandle(runtime, "linesExecuted", long.class);
+            CURRENT_LINE = lookup.findVarHandle(runtime, "currentLine", int.class);
+            GOSUB_DEPTH = lookup.findVarHandle(runtime, "gosubDepth", int.class);
+            NEXT_DATA_PTR = lookup.findVarHandle(runtime, "nextDataPtr", int.class);
+            CHARACTERS_PRINTED = lookup.findVarHandle(runtime, "charactersPrinted", long.class);
+            INPUT_WAIT_NANOS = lookup.findVarHandle(runtime, "inputWaitNanos", long.class);
+            FIRST_START = lookup.findVarHandle(runtime, "firstStart", long.class);
+            LAST_END = lookup.findVarHandle(runtime, "lastEnd", long.class);
+            RUNNING = lookup.findVarHandle(runtime, "running", boolean.class);
+            RESUME_POINT = lookup.findVarHandle(runtime, "resumePoint", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // these are here so we can swap them out in tests, in and random are only
+    // created when first used (if not set before), keeping new instances cheap
+    private Scanner in;
     private PrintStream out = System.out;
     private int currentTab = 0;
-    private Random random = new Random();
+    private Random random;
     private float prevRandom;
     private Object[] data;
     private int nextDataPtr = 0;
     // manually manage stack for GOSUB return addresses to workaround
     // issues with verification/Java ASM
     private final Deque<Integer> returnAddressStack = new ArrayDeque<>();
+    // used by resumable programs (see JavaASM): input offered but not yet read (each line
+    // ending in a newline, read a token or line at a time like the Scanner), where to
+    // carry on from when run() is next called and the locals saved when suspended
+    private final StringBuilder offeredInput = new StringBuilder();
+    private int resumePoint;
+    private float[] savedFloats;
+    private Object[] savedObjects;
+    // used by programs with a step budget: steps left before checkBudget() must be called,
+    // steps left after that and the deadline (System.nanoTime()) if there is one
+    private int stepCountdown;
+    private long stepBudget = Long.MAX_VALUE;
+    private long deadline;
+    private boolean hasDeadline;
+    // memory quota for DIM'd arrays and stored strings (in bytes) and the longest string that can be built
+    private long memoryQuota = Long.MAX_VALUE;
+    private long memoryUsed;
+    private int maxStringLength = Integer.MAX_VALUE;
+    // used by profiled programs, indexed by line (see ProfileCounts)
+    private ProfileCounts profile;
+    private long[] lineCounts;
+    private final Deque<Integer> gosubLines = new ArrayDeque<>();
+    private final Deque<Long> gosubStarts = new ArrayDeque<>();
+    // for JFR events, the event for the current call to run() is only created when it's enabled
+    private ProgramRunEvent runEvent;
+    private long charactersPrinted;
+    private int maxGosubDepth;
+
+    // for monitoring, written only by the thread running the program but read by others (see getStatus)
+    private long linesExecuted;
+    private int currentLine;
+    private int gosubDepth;
+    private long inputWaitNanos;
+    private long firstStart;
+    private long lastEnd;
+    private boolean running;
 
     float fnINT(float f) {
         return (int) f;
@@ -46,10 +128,14 @@ public class BasRuntime implements Runnable {
         if (f == 0.0f) {
             return prevRandom;
         }
+        if (random == null) {
+            random = new Random();
+        }
         return (prevRandom = random.nextFloat());
     }
 
     String fnTAB(float f) {
+        checkStringLength(f - currentTab);
         var builder = new StringBuilder();
         for (var i = currentTab; i < f; i++) {
             builder.append(' ');
@@ -110,19 +196,85 @@ public class BasRuntime implements Runnable {
         return formatFloat(f);
     }
 
+    String concat(String s1, String s2) {
+        checkStringLength((long) s1.length() + s2.length());
+        return s1.concat(s2);
+    }
+
+    private void checkStringLength(double length) {
+        if (length > maxStringLength) {
+            throw new MemoryQuotaExceededException("String longer than " + maxStringLength + " characters");
+        }
+    }
+
+    /*
+     Counts a string stored in a variable or array element, in place of old,
+     against the memory quota, so a program can't get round it by filling a
+     string array with strings each as long as they're allowed to be
+     */
+    String storeString(String old, String value) {
+        var bytes = ((long) length(value) - length(old)) * Character.BYTES;
+        if (bytes > memoryQuota - memoryUsed) {
+            throw new MemoryQuotaExceededException("Strings exceed memory quota of " + memoryQuota + " bytes");
+        }
+        memoryUsed += bytes;
+        return value;
+    }
+
+    // string array elements start off null
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    // counts an array about to be DIM'd against the memory quota, returning its sizes to create it with
+    int[] checkDim(Class<?> elementType, int[] sizes) {
+        var bytes = estimateBytes(elementType, sizes);
+        if (bytes > memoryQuota - memoryUsed) {
+            throw new MemoryQuotaExceededException("DIM exceeds memory quota of " + memoryQuota + " bytes");
+        }
+        memoryUsed += bytes;
+        return sizes;
+    }
+
+    private long estimateBytes(Class<?> elementType, int[] sizes) {
+        // the array at each level, plus all the elements at the bottom
+        long arrays = 0;
+        long elements = 1;
+        try {
+            for (var size: sizes) {
+                if (size < 0) {
+                    runtimeError("Negative array size: " + size);
+                }
+                arrays = Math.addExact(arrays, elements);
+                elements = Math.multiplyExact(elements, size);
+            }
+            var elementBytes = elementType == float.class ? Float.BYTES : REFERENCE_BYTES;
+            return Math.addExact(Math.multiplyExact(arrays, ARRAY_HEADER_BYTES), Math.multiplyExact(elements, elementBytes));
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
     float readFLOAT() {
-        var data = this.data[nextDataPtr++];
+        var data = this.data[nextDataPtr];
+        NEXT_DATA_PTR.setOpaque((Object) this, nextDataPtr + 1);
         return (Float) data;
     }
 
     String readSTRING() {
-        var data = this.data[nextDataPtr++];
+        var data = this.data[nextDataPtr];
+        NEXT_DATA_PTR.setOpaque((Object) this, nextDataPtr + 1);
         return (String) data;
     }
 
+    void restore(int dataPtr) {
+        NEXT_DATA_PTR.setOpaque((Object) this, dataPtr);
+    }
+
     void print(String s) {
         out.print(s);
         currentTab += s.length();
+        CHARACTERS_PRINTED.setOpaque((Object) this, charactersPrinted + s.length());
     }
 
     void print(float f) {
@@ -139,25 +291,179 @@ public class BasRuntime implements Runnable {
     void println() {
         out.println();
         currentTab = 0;
+        CHARACTERS_PRINTED.setOpaque((Object) this, charactersPrinted + 1);
     }
 
     private String formatFloat(float f) {
         return MessageFormat.format("{0,number,0.###}", f);
     }
 
+    private Scanner in() {
+        if (in == null) {
+            in = new Scanner(System.in);
+        }
+        return in;
+    }
+
     float inputFLOAT() {
+        var event = beginInputWait("FLOAT");
+        var start = System.nanoTime();
+        try {
+            while (true) {
+                try {
+                    return in().nextFloat();
+                } catch (InputMismatchException e) {
+                    print("Please enter a valid number");
+                    println();
+                }
+            }
+        } finally {
+            INPUT_WAIT_NANOS.setOpaque((Object) this, inputWaitNanos + System.nanoTime() - start);
+            event.commit();
+        }
+    }
+
+    String inputSTRING() {
+        var event = beginInputWait("STRING");
+        var start = System.nanoTime();
+        try {
+            return in().nextLine();
+        } finally {
+            INPUT_WAIT_NANOS.setOpaque((Object) this, inputWaitNanos + System.nanoTime() - start);
+            event.commit();
+        }
+    }
+
+    private InputWaitEvent beginInputWait(String dataType) {
+        var event = new InputWaitEvent();
+        if (event.isEnabled()) {
+            event.programClass = getClass().getName();
+            event.dataType = dataType;
+            event.begin();
+        }
+        return event;
+    }
+
+    void startRun() {
+        if (firstStart == 0) {
+            FIRST_START.setOpaque((Object) this, System.nanoTime());
+        }
+        RUNNING.setOpaque((Object) this, true);
+        var event = new ProgramRunEvent();
+        if (event.isEnabled()) {
+            event.programClass = getClass().getName();
+            event.begin();
+            runEvent = event;
+        }
+    }
+
+    void endRun() {
+        LAST_END.setOpaque((Object) this, System.nanoTime());
+        RUNNING.setOpaque((Object) this, false);
+        var event = runEvent;
+        if (event != null) {
+            runEvent = null;
+            event.charactersPrinted = charactersPrinted;
+            event.maxGosubDepth = maxGosubDepth;
+            event.waitingForInput = isWaitingForInput();
+            event.commit();
+        }
+    }
+
+    boolean hasInputFLOAT() {
         while (true) {
+            var end = offeredTokenEnd();
+            if (end < 0) {
+                return false;
+            }
             try {
-                return in.nextFloat();
-            } catch (InputMismatchException e) {
+                Float.parseFloat(offeredInput.substring(0, end).strip());
+                return true;
+            } catch (NumberFormatException e) {
+                offeredInput.delete(0, end);
                 print("Please enter a valid number");
                 println();
             }
         }
     }
 
-    String inputSTRING() {
-        return in.nextLine();
+    float takeInputFLOAT() {
+        var end = offeredTokenEnd();
+        var token = offeredInput.substring(0, end).strip();
+        // like Scanner.nextFloat(), leave the rest of the line for the next INPUT
+        offeredInput.delete(0, end);
+        return Float.parseFloat(token);
+    }
+
+    // end of the next whitespace separated token, or -1 if there isn't a whole one yet
+    private int offeredTokenEnd() {
+        var start = 0;
+        while (start < offeredInput.length() && Character.isWhitespace(offeredInput.charAt(start))) {
+            start++;
+        }
+        var end = start;
+        while (end < offeredInput.length() && !Character.isWhitespace(offeredInput.charAt(end))) {
+            end++;
+        }
+        return end > start && end < offeredInput.length() ? end : -1;
+    }
+
+    boolean hasInputSTRING() {
+        return offeredInput.indexOf("\n") >= 0;
+    }
+
+    String takeInputSTRING() {
+        // like Scanner.nextLine(), the rest of the current line
+        var end = offeredInput.indexOf("\n");
+        var line = offeredInput.substring(0, end);
+        offeredInput.delete(0, end + 1);
+        return line;
+    }
+
+    void suspendAt(int resumePoint) {
+        RESUME_POINT.setOpaque((Object) this, resumePoint);
+    }
+
+    int takeResumePoint() {
+        var resumePoint = this.resumePoint;
+        RESUME_POINT.setOpaque((Object) this, 0);
+        savedFloats = null;
+        savedObjects = null;
+        return resumePoint;
+    }
+
+    void checkBudget() {
+        if (stepBudget == 0) {
+            throw new BudgetExceededException("Step budget exceeded");
+        }
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("Time limit exceeded");
+        }
+        var steps = (int) Math.min(STEPS_BETWEEN_CHECKS, stepBudget);
+        stepBudget -= steps;
+        // this step is one of them
+        stepCountdown = steps - 1;
+    }
+
+    void initProfile(int lines) {
+        if (profile == null) {
+            profile = new ProfileCounts(new long[lines], new long[lines], new long[lines]);
+            lineCounts = profile.lineCounts();
+        }
+    }
+
+    void enterGosub(int line) {
+        gosubLines.push(line);
+        gosubStarts.push(System.nanoTime());
+    }
+
+    void exitGosub() {
+        if (gosubLines.isEmpty()) {
+            return;
+        }
+        var line = gosubLines.pop();
+        profile.gosubCalls()[line]++;
+        profile.gosubNanos()[line] += System.nanoTime() - gosubStarts.pop();
     }
 
     void runtimeError(String error) {
@@ -166,10 +472,22 @@ public class BasRuntime implements Runnable {
 
     void pushReturnAddress(int address) {
         returnAddressStack.push(address);
+        GOSUB_DEPTH.setOpaque((Object) this, gosubDepth + 1);
+        if (returnAddressStack.size() > maxGosubDepth) {
+            maxGosubDepth = returnAddressStack.size();
+            var event = new GosubDepthEvent();
+            if (event.isEnabled()) {
+                event.programClass = getClass().getName();
+                event.depth = maxGosubDepth;
+                event.commit();
+            }
+        }
     }
 
     int popReturnAddress() {
-        return returnAddressStack.pop();
+        var address = returnAddressStack.pop();
+        GOSUB_DEPTH.setOpaque((Object) this, gosubDepth - 1);
+        return address;
     }
 
     @Override
@@ -177,18 +495,89 @@ public class BasRuntime implements Runnable {
 
     }
 
+    @Override
+    public void offerInput(String line) {
+        offeredInput.append(line).append('\n');
+    }
+
+    @Override
+    public boolean isWaitingForInput() {
+        return (int) RESUME_POINT.getOpaque((Object) this) != 0;
+    }
+
+    @Override
+    public void setStepBudget(long steps) {
+        stepBudget = steps;
+        stepCountdown = 0;
+    }
+
+    @Override
+    public void setDeadline(long nanoTime) {
+        deadline = nanoTime;
+        hasDeadline = true;
+        stepCountdown = 0;
+    }
+
+    @Override
+    public void setMemoryQuota(long bytes) {
+        memoryQuota = bytes;
+    }
+
+    @Override
+    public void setMaxStringLength(int length) {
+        maxStringLength = length;
+    }
+
+    @Override
+    public void setRandomSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public ProfileCounts getProfile() {
+        return profile;
+    }
+
+    // for monitored programs, called at the start of every line
+    void trackLine(int line) {
+        LINES_EXECUTED.setOpaque((Object) this, linesExecuted + 1);
+        CURRENT_LINE.setOpaque((Object) this, line);
+    }
+
+    @Override
+    public ProgramStatus getStatus() {
+        var running = (boolean) RUNNING.getOpaque((Object) this);
+        var firstStart = (long) FIRST_START.getOpaque((Object) this);
+        var end = running ? System.nanoTime() : (long) LAST_END.getOpaque((Object) this);
+        return new ProgramStatus(
+            (long) LINES_EXECUTED.getOpaque((Object) this),
+            (int) CURRENT_LINE.getOpaque((Object) this),
+            (int) GOSUB_DEPTH.getOpaque((Object) this),
+            (int) NEXT_DATA_PTR.getOpaque((Object) this),
+            (long) CHARACTERS_PRINTED.getOpaque((Object) this),
+            (long) INPUT_WAIT_NANOS.getOpaque((Object) this),
+            firstStart == 0 ? 0 : end - firstStart,
+            running,
+            isWaitingForInput()
+        );
+    }
+
+    @Override
     public Scanner getIn() {
         return in;
     }
 
+    @Override
     public void setIn(Scanner in) {
         this.in = in;
     }
 
+    @Override
     public PrintStream getOut() {
         return out;
     }
 
+    @Override
     public void setOut(PrintStream out) {
         this.out = out;
     }
@@ -0,0 +1,13 @@
+package runtime;
+
+/*
+ Thrown when a program compiled with a step budget (see
+ BasProgram.setStepBudget) runs out of steps or time
+ */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("basic.GosubDepth")
+@Label("BASIC GOSUB Depth")
+@Category("BASIC")
+@Description("A BASIC program's GOSUB stack reaching a new maximum depth")
+public class GosubDepthEvent extends jdk.jfr.Event {
+    @Label("Program Class")
+    public String programClass;
+
+    @Label("Depth")
+    public int depth;
+}
@@ -0,0 +1,18 @@
+package runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("basic.InputWait")
+@Label("BASIC Input Wait")
+@Category("BASIC")
+@Description("A BASIC program blocked waiting for INPUT")
+public class InputWaitEvent extends jdk.jfr.Event {
+    @Label("Program Class")
+    public String programClass;
+
+    @Label("Data Type")
+    public String dataType;
+}
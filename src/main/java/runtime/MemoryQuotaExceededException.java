@@ -0,0 +1,13 @@
+package runtime;
+
+/*
+ Thrown when a program DIMs more than its memory quota or builds a string
+ longer than its limit (see BasProgram.setMemoryQuota)
+ */
+public class MemoryQuotaExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public MemoryQuotaExceededException(String message) {
+        super(message);
+    }
+}
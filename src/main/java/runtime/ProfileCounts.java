@@ -0,0 +1,11 @@
+package runtime;
+
+/*
+ What a program compiled with profiling (see JavaASM.Options) has recorded,
+ each array indexed by the line's position in the program.  gosubCalls and
+ gosubNanos are counted against the line each GOSUB goes to, the time
+ including anything the subroutine itself calls.
+ */
+public record ProfileCounts(long[] lineCounts, long[] gosubCalls, long[] gosubNanos) {
+
+}
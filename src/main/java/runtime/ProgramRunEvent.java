@@ -0,0 +1,30 @@
+package runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ Recorded for each call to a program's run(), from start to end (or, for a
+ resumable program, until it stops to wait for input).  Fields are public so
+ they can be set from generated classes, which aren't in this package.
+ */
+@Name("basic.ProgramRun")
+@Label("BASIC Program Run")
+@Category("BASIC")
+@Description("A BASIC program running, from start to end or until it waits for input")
+public class ProgramRunEvent extends jdk.jfr.Event {
+    @Label("Program Class")
+    public String programClass;
+
+    @Label("Characters Printed")
+    @Description("Characters printed by the program so far")
+    public long charactersPrinted;
+
+    @Label("Max GOSUB Depth")
+    public int maxGosubDepth;
+
+    @Label("Waiting For Input")
+    public boolean waitingForInput;
+}
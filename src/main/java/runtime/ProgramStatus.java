@@ -0,0 +1,21 @@
+package runtime;
+
+/*
+ A snapshot of a program's progress (see BasProgram.getStatus).  currentLine
+ is the BASIC line number of the line last started, wallNanos the time from
+ the first call to run() until now, or until the last call returned if it
+ isn't running, and inputWaitNanos how much of that was spent blocked in INPUT.
+ */
+public record ProgramStatus(
+    long linesExecuted,
+    int currentLine,
+    int gosubDepth,
+    int dataPointer,
+    long charactersPrinted,
+    long inputWaitNanos,
+    long wallNanos,
+    boolean running,
+    boolean waitingForInput
+) {
+
+}
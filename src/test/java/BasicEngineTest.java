@@ -0,0 +1,196 @@
+import org.junit.jupiter.api.Test;
+import runtime.BasProgram;
+import runtime.BudgetExceededException;
+import runtime.MemoryQuotaExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BasicEngineTest {
+
+    @Test
+    void givenSameSource_whenCompiling_thenSameProgramReturned() throws Exception {
+        var engine = new BasicEngine(OptimisationLevel.O1, 1, false);
+        var program = engine.compile("10 PRINT 1");
+        assertSame(program, engine.compile("10 PRINT 1"));
+        // only one program is kept, so compiling another source evicts the first
+        engine.compile("10 PRINT 2");
+        assertEquals(1, engine.getCachedPrograms());
+        assertNotSame(program, engine.compile("10 PRINT 1"));
+    }
+
+    @Test
+    void givenCompiledProgram_whenRunningConcurrently_thenEachRunHasOwnState() throws Exception {
+        var program = new BasicEngine().compile(
+            "10 INPUT A\n" +
+            "20 FOR I = 1 TO 3\n" +
+            "30 A = A + I\n" +
+            "40 NEXT I\n" +
+            "50 PRINT A"
+        );
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var runs = new ArrayList<Callable<String>>();
+            for (var i = 0; i < 100; i++) {
+                var input = String.valueOf(i);
+                runs.add(() -> run(program, input));
+            }
+            var results = executor.invokeAll(runs);
+            for (var i = 0; i < results.size(); i++) {
+                assertEquals(" " + (i + 6) + " \n", results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void givenCompiledProgram_whenGettingCompileStats_thenPhasesAndSizesReported() throws Exception {
+        var program = new BasicEngine().compile(
+            "10 FOR I = 1 TO 3: PRINT I\n" +
+            "20 NEXT I"
+        );
+        var stats = program.getCompileStats();
+        assertNull(stats.tokenizeTime());
+        assertNotNull(stats.parseTime());
+        assertNotNull(stats.typeCheckTime());
+        assertNotNull(stats.optimiseTime());
+        assertEquals(2, stats.code().lines());
+        assertEquals(3, stats.code().statements());
+        assertTrue(stats.code().runCodeSize() > 0, stats.toString());
+    }
+
+    @Test
+    void givenHiddenClasses_whenCompiling_thenProgramIsHiddenClass() throws Exception {
+        var program = new BasicEngine().compile("10 PRINT \"HIDDEN\"");
+        assertTrue(program.getProgramClass().isHidden());
+        assertEquals("HIDDEN\n", run(program, ""));
+    }
+
+    @Test
+    void givenResumableProgram_whenWaitingForInput_thenRunReturnsUntilInputOffered() throws Exception {
+        var program = new BasicEngine().compileResumable(
+            "10 DIM T(3)\n" +
+            "20 FOR I = 1 TO 3\n" +
+            "30 INPUT \"SCORE\"; T(I)\n" +
+            "40 GOSUB 100\n" +
+            "50 NEXT I\n" +
+            "60 INPUT \"NAME\"; N$\n" +
+            "70 PRINT N$; \" \"; T(1) + T(2) + T(3)\n" +
+            "80 END\n" +
+            "100 PRINT \"GOT\"; T(I)\n" +
+            "110 RETURN"
+        );
+        // lots of sessions can be left waiting without needing a thread each
+        var output = new ByteArrayOutputStream();
+        var sessions = new ArrayList<BasProgram>();
+        for (var i = 0; i < 1000; i++) {
+            var session = program.newInstance(null, new PrintStream(output));
+            session.run();
+            assertTrue(session.isWaitingForInput());
+            sessions.add(session);
+        }
+        output.reset();
+        var session = sessions.get(0);
+        for (var input: List.of("1", "X", "2")) {
+            session.offerInput(input);
+            session.run();
+            assertTrue(session.isWaitingForInput());
+        }
+        // input is read the same way as the Scanner's, so N$ is the rest of the line after the last score
+        session.offerInput("3 ANN");
+        session.run();
+        assertFalse(session.isWaitingForInput());
+        assertEquals(
+            "GOT 1 \nSCORE? Please enter a valid number\nGOT 2 \nSCORE? GOT 3 \nNAME?  ANN  6 \n",
+            output.toString(StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    void givenStepBudget_whenProgramLoopsForever_thenBudgetExceeded() throws Exception {
+        var program = new BasicEngine().compile(
+            "10 FOR I = 1 TO 5\n" +
+            "20 NEXT I\n" +
+            "30 A = A + 1\n" +
+            "40 GOTO 10"
+        );
+        var instance = program.newInstance(null, new PrintStream(new ByteArrayOutputStream()));
+        // each time round: 5 NEXTs and a GOTO
+        instance.setStepBudget(6 * 1000);
+        var ex = assertThrows(BudgetExceededException.class, instance::run);
+        assertEquals("Step budget exceeded", ex.getMessage());
+
+        instance = program.newInstance(null, new PrintStream(new ByteArrayOutputStream()));
+        instance.setDeadline(System.nanoTime() + Duration.ofMillis(50).toNanos());
+        ex = assertThrows(BudgetExceededException.class, instance::run);
+        assertEquals("Time limit exceeded", ex.getMessage());
+    }
+
+    @Test
+    void givenMemoryQuota_whenDimmingOrGrowingStrings_thenQuotaEnforced() throws Exception {
+        var program = new BasicEngine().compile(
+            "10 DIM A(100)\n" +
+            "20 DIM B$(10, 10)\n" +
+            "30 PRINT \"DIMMED\"\n" +
+            "40 DIM C(100)\n"
+        );
+        var output = new ByteArrayOutputStream();
+        var instance = program.newInstance(null, new PrintStream(output));
+        // A: 16 + 100 * 4, B$: 16 + 10 * 16 + 100 * 8, C: 16 + 100 * 4
+        instance.setMemoryQuota(416 + 976 + 415);
+        var ex = assertThrows(MemoryQuotaExceededException.class, instance::run);
+        assertEquals("DIM exceeds memory quota of 1807 bytes", ex.getMessage());
+        assertEquals("DIMMED\n", output.toString(StandardCharsets.UTF_8));
+
+        program = new BasicEngine().compile(
+            "10 A$ = \"X\"\n" +
+            "20 A$ = A$ + A$\n" +
+            "30 GOTO 20"
+        );
+        instance = program.newInstance(null, new PrintStream(output));
+        instance.setMaxStringLength(1000);
+        ex = assertThrows(MemoryQuotaExceededException.class, instance::run);
+        assertEquals("String longer than 1000 characters", ex.getMessage());
+    }
+
+    @Test
+    void givenRandomSeed_whenRunning_thenSameRandomNumbers() throws Exception {
+        var program = new BasicEngine().compile("10 PRINT RND(1); RND(1); RND(1)");
+        var outputs = new ArrayList<String>();
+        for (var seed: List.of(42L, 42L, 43L)) {
+            var output = new ByteArrayOutputStream();
+            var instance = program.newInstance(null, new PrintStream(output));
+            instance.setRandomSeed(seed);
+            instance.run();
+            outputs.add(output.toString(StandardCharsets.UTF_8));
+        }
+        assertEquals(outputs.get(0), outputs.get(1));
+        assertNotEquals(outputs.get(0), outputs.get(2));
+    }
+
+    private String run(CompiledProgram program, String input) {
+        var output = new ByteArrayOutputStream();
+        var in = new Scanner(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        program.run(in, new PrintStream(output));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassCacheTest {
+
+    @Test
+    void givenDifferentSourceOrOptions_whenCreatingKey_thenKeysDiffer() {
+        var key = ClassCache.key("10 PRINT 1", "test", List.of("O1"));
+        assertEquals(key, ClassCache.key(new StringBuilder("10 PRINT 1"), "test", List.of("O1")));
+        assertNotEquals(key, ClassCache.key("10 PRINT 2", "test", List.of("O1")));
+        assertNotEquals(key, ClassCache.key("10 PRINT 1", "other", List.of("O1")));
+        assertNotEquals(key, ClassCache.key("10 PRINT 1", "test", List.of("O2")));
+    }
+
+    @Test
+    void givenCachedClass_whenGetting_thenBytesReturned(@TempDir Path dir) throws Exception {
+        var cache = new ClassCache(dir, 1024);
+        assertEquals(Optional.empty(), cache.get("abc"));
+        cache.put("abc", new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get("abc").orElseThrow());
+    }
+
+    @Test
+    void givenCacheOverSize_whenPutting_thenLeastRecentlyUsedEvicted(@TempDir Path dir) throws Exception {
+        var cache = new ClassCache(dir, 250);
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[100]);
+        Files.setLastModifiedTime(dir.resolve("a.class"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(dir.resolve("b.class"), FileTime.fromMillis(2000));
+        // reading "a" makes it the most recently used
+        cache.get("a");
+        cache.put("c", new byte[100]);
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    @Test
+    void givenConcurrentWriters_whenPutting_thenEntryIsComplete(@TempDir Path dir) throws Exception {
+        var cache = new ClassCache(dir, 1024 * 1024);
+        var bytes = new byte[64 * 1024];
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < 32; i++) {
+                tasks.add(() -> {
+                    cache.put("same", bytes);
+                    assertArrayEquals(bytes, cache.get("same").orElseThrow());
+                    return null;
+                });
+            }
+            for (var future: executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(dir.resolve("same.class")), files.toList());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompileStatsTest {
+
+    @Test
+    void givenProgram_whenCompiled_thenSizesReported() throws Exception {
+        var source =
+            "10 REM COUNT TO \"THREE\n" +
+            "20 FOR I = 1 TO 3: PRINT I\n" +
+            "30 NEXT I";
+        assertEquals(17, Tokenizer.countTokens(source));
+
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT);
+        new Parser().parse(source).visit(javaAsm);
+        var bytes = javaAsm.generateClass("stats_test");
+        var code = javaAsm.getCodeStats();
+        assertEquals(3, code.lines());
+        assertEquals(4, code.statements());
+        assertEquals(bytes.length, code.classSize());
+        assertEquals(code.runCodeSize(), code.methodCodeSizes().get("run()V"));
+        assertTrue(code.runCodeSize() > 0 && code.maxStack() > 0 && code.localSlots() > 1, code.toString());
+        assertTrue(new CompileStats(17, Duration.ZERO, null, null, null, code).warnings().isEmpty());
+        // and what was generated still works
+        CompiledProgram.define("stats_test", bytes).run(null, new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void givenHugeRunMethod_whenStatsPrinted_thenJitLimitWarned() throws Exception {
+        var source = new StringBuilder();
+        for (var line = 1; line <= 600; line++) {
+            source.append(line * 10).append(" A = A + ").append(line).append(": PRINT A\n");
+        }
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT);
+        new Parser().parse(source).visit(javaAsm);
+        javaAsm.generateClass("stats_test");
+
+        var warnings = new CompileStats(0, null, null, null, null, javaAsm.getCodeStats()).warnings();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains("over HugeMethodLimit (8000)"), warnings.get(0));
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncrementalCompilerTest {
+    private final IncrementalCompiler compiler = new IncrementalCompiler("incremental_test", OptimisationLevel.O1);
+
+    @Test
+    void givenEditedLines_whenRecompiling_thenOnlyEditedLinesParsed() throws Exception {
+        var compilation = compiler.compile(
+            "10 FOR I = 1 TO 3\n" +
+            "20 PRINT I\n" +
+            "30 NEXT I\n" +
+            "40 PRINT \"DONE\"\n"
+        );
+        assertEquals(4, compilation.linesParsed());
+        assertEquals(" 1 \n 2 \n 3 \nDONE\n", run(compilation));
+
+        var edits = new HashMap<Integer, String>();
+        edits.put(20, "20 PRINT I * 2");
+        edits.put(40, null);
+        edits.put(35, "35 PRINT \"END\"");
+        var recompiled = compiler.recompile(compilation, edits);
+        assertEquals(2, recompiled.linesParsed());
+        assertEquals(" 2 \n 4 \n 6 \nEND\n", run(recompiled));
+        // the previous compilation is unaffected
+        assertEquals(" 1 \n 2 \n 3 \nDONE\n", run(compilation));
+    }
+
+    @Test
+    void givenEditWithWrongLineNumber_whenRecompiling_thenExceptionThrown() throws Exception {
+        var compilation = compiler.compile("10 PRINT 1");
+        var ex = assertThrows(IllegalArgumentException.class, () -> compiler.recompile(compilation, Map.of(10, "20 PRINT 2")));
+        assertEquals("Expected just line 10, but got: 20 PRINT 2", ex.getMessage());
+    }
+
+    private String run(IncrementalCompiler.Compilation compilation) throws Exception {
+        var output = new ByteArrayOutputStream();
+        CompiledProgram.define("incremental_test", compilation.bytes()).run(new Scanner(System.in), new PrintStream(output));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
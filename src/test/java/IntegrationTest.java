@@ -1,7 +1,8 @@
+import ast.Program;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
-import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.params.provider.MethodSource;
 
-import java.beans.PropertyDescriptor;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -11,48 +12,206 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class IntegrationTest {
 
-    @ParameterizedTest
-    @ValueSource(strings = {
+    static Stream<String> examples() {
+        return Stream.of(
             "hello", "loop", "expressions", "if", "comparisons", "functions", "end", "strings", "data",
-            "gosub", "datatypes", "input", "arrays", "boolean", "goto", "print"
-    })
+            "gosub", "datatypes", "input", "arrays", "boolean", "goto", "print", "ifloop", "unassigned", "gosubloop", "nesting"
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
     void givenSource_whenCompilingAndRunning_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        compileAndRun(exampleDir, UnaryOperator.identity());
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    void givenSource_whenOptimisingCompilingAndRunning_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O2, Duration.ofMinutes(1));
+        compileAndRun(exampleDir, passManager::run);
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    void givenSource_whenStreamingCompilingAndRunning_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        var source = readResource("examples/" + exampleDir + "/input.bas");
+        var className = exampleDir + "_stream_test";
+        var bytes = new JavaASM().generateClass(className, new Parser().streamLines(source));
+        run(exampleDir, className, bytes);
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    void givenSource_whenStreamingAndFoldingCompilingAndRunning_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        var source = readResource("examples/" + exampleDir + "/input.bas");
+        var className = exampleDir + "_stream_folded_test";
+        var lines = new StreamedLines(new Parser(), source, OptimisationLevel.O1);
+        var bytes = new JavaASM(lines::typesOf, JavaASM.Options.DEFAULT).generateClass(className, lines);
+        run(exampleDir, className, bytes);
+    }
+
+    @Test
+    void givenTypeErrorThatFoldsAway_whenStreamingCompiling_thenRejectedAsWhenNotStreaming() throws Exception {
+        var source = "10 PRINT 1 AND \"A\"\n";
+        assertThrows(TypeCheckingException.class, () -> TypeChecker.check(new Parser().parse(source)));
+        var lines = new StreamedLines(new Parser(), source, OptimisationLevel.O1);
+        var javaAsm = new JavaASM(lines::typesOf, JavaASM.Options.DEFAULT);
+        assertThrows(TypeCheckingException.class, () -> javaAsm.generateClass("folded_type_error_test", lines));
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    void givenSource_whenRunningAsHiddenClass_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        var source = readResource("examples/" + exampleDir + "/input.bas");
+        var program = new Parser().parse(source);
+        var javaAsm = new JavaASM();
+        program.visit(javaAsm);
+        run(exampleDir, CompiledProgram.defineHidden(javaAsm.generateClass(exampleDir + "_hidden_test")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("examples")
+    void givenSource_whenRunningResumable_thenCorrectOutputGenerated(String exampleDir) throws Exception {
+        var source = readResource("examples/" + exampleDir + "/input.bas");
+        var program = new Parser().parse(source);
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withResumable(true));
+        program.visit(javaAsm);
+        var className = exampleDir + "_resumable_test";
+        var compiled = CompiledProgram.define(className, javaAsm.generateClass(className));
+
+        var capturedOutput = new ByteArrayOutputStream();
+        var instance = compiled.newInstance(null, new PrintStream(capturedOutput));
+        var stdin = getClass().getResource("examples/" + exampleDir + "/stdin.txt");
+        var inputLines = stdin != null ? Files.readAllLines(Paths.get(stdin.toURI())) : List.<String>of();
+        instance.run();
+        // offer input a line at a time, only once the program has stopped to wait for it
+        for (var line: inputLines) {
+            assertTrue(instance.isWaitingForInput());
+            instance.offerInput(line);
+            instance.run();
+        }
+        assertFalse(instance.isWaitingForInput());
+        assertEquals(
+            readResource("examples/" + exampleDir + "/output.txt"),
+            capturedOutput.toString(StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    void givenSeveralValuesOnOneLine_whenRunningResumable_thenReadLikeBlockingInput() throws Exception {
+        var program = new Parser().parse(
+            "10 INPUT A, B\n" +
+            "20 INPUT C\n" +
+            "30 PRINT A + B + C\n"
+        );
+        var blockingAsm = new JavaASM();
+        program.visit(blockingAsm);
+        var blockingOutput = new ByteArrayOutputStream();
+        CompiledProgram.define("several_values_test", blockingAsm.generateClass("several_values_test"))
+            .run(new Scanner("1 2\n3\n"), new PrintStream(blockingOutput));
+
+        var resumableAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withResumable(true));
+        program.visit(resumableAsm);
+        var resumableOutput = new ByteArrayOutputStream();
+        var instance = CompiledProgram.define("several_values_resumable_test", resumableAsm.generateClass("several_values_resumable_test"))
+            .newInstance(null, new PrintStream(resumableOutput));
+        instance.run();
+        assertTrue(instance.isWaitingForInput());
+        // both values for line 10 in one line, so the program only stops again at line 20
+        instance.offerInput("1 2");
+        instance.run();
+        assertTrue(instance.isWaitingForInput());
+        instance.offerInput("3");
+        instance.run();
+        assertFalse(instance.isWaitingForInput());
+
+        assertEquals(blockingOutput.toString(StandardCharsets.UTF_8), resumableOutput.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void givenRuntimeError_whenRunning_thenStackTraceShowsBasicLine() throws Exception {
+        var program = new Parser().parse(
+            "10 DIM A(3)\n" +
+            "20 FOR I = 1 TO 5\n" +
+            "30 A(I) = I\n" +
+            "40 NEXT I\n"
+        );
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withSourceFile("arrays.bas"));
+        program.visit(javaAsm);
+        var instance = CompiledProgram.define("line_numbers_test", javaAsm.generateClass("line_numbers_test")).newInstance(null, System.out);
+        var ex = assertThrows(ArrayIndexOutOfBoundsException.class, instance::run);
+        var frame = ex.getStackTrace()[0];
+        assertEquals("run", frame.getMethodName());
+        assertEquals("arrays.bas", frame.getFileName());
+        assertEquals(30, frame.getLineNumber());
+    }
+
+    @Test
+    void givenManyGosubsAndReturns_whenCompiling_thenFitsInOneMethod() throws Exception {
+        var source = new StringBuilder();
+        for (var i = 1; i <= 300; i++) {
+            source.append(i * 10).append(" GOSUB ").append(10_000 + i * 10).append('\n');
+        }
+        source.append("9990 PRINT C: END\n");
+        for (var i = 1; i <= 300; i++) {
+            source.append(10_000 + i * 10).append(" C = C + 1: RETURN\n");
+        }
+        var javaAsm = new JavaASM();
+        new Parser().parse(source).visit(javaAsm);
+        assertTrue(javaAsm.generateClass("returns_test").length > 0);
+    }
+
+    @Test
+    void givenProgramOverMethodSizeLimit_whenCompiling_thenClearError() throws Exception {
+        var source = new StringBuilder();
+        for (var i = 1; i <= 20_000; i++) {
+            source.append(i).append(" A = A + 1\n");
+        }
+        var javaAsm = new JavaASM();
+        new Parser().parse(source).visit(javaAsm);
+        var e = assertThrows(IllegalStateException.class, () -> javaAsm.generateClass("too_large_test"));
+        assertTrue(e.getMessage().startsWith("Program too large to compile: run() needs "), e.getMessage());
+    }
+
+    private void compileAndRun(String exampleDir, UnaryOperator<Program> optimise) throws Exception {
         var javaAsm = new JavaASM();
         var inputSource = "examples/" + exampleDir + "/input.bas";
         try (var in = new BufferedInputStream(getClass().getResourceAsStream(inputSource))) {
             var parser = new Parser();
-            var program = parser.parse(new InputStreamReader(in));
+            var program = optimise.apply(parser.parse(new InputStreamReader(in)));
             program.visit(javaAsm);
         }
         var className = exampleDir + "_test";
         var bytes = javaAsm.generateClass(className);
-        var classLoader = new ClassLoader() {
-            @Override
-            protected Class<?> findClass(String name) {
-                return defineClass(name, bytes, 0, bytes.length);
-            }
-        };
-
-        Class<? extends Runnable> clazz = (Class) classLoader.findClass(className);
-        Runnable runnable = clazz.getDeclaredConstructor().newInstance();
-        PropertyDescriptor outProperty = new PropertyDescriptor("out", clazz);
+        run(exampleDir, className, bytes);
+    }
+
+    private void run(String exampleDir, String className, byte[] bytes) throws Exception {
+        run(exampleDir, CompiledProgram.define(className, bytes));
+    }
+
+    private void run(String exampleDir, CompiledProgram program) throws Exception {
         ByteArrayOutputStream capturedOutput = new ByteArrayOutputStream();
         try (
             var printOut = new PrintStream(capturedOutput);
             var stdinBytes = getClass().getResourceAsStream("examples/" + exampleDir + "/stdin.txt")
         ) {
-            outProperty.getWriteMethod().invoke(runnable, printOut);
-            if (stdinBytes != null) {
-                PropertyDescriptor inProperty = new PropertyDescriptor("in", clazz);
-                inProperty.getWriteMethod().invoke(runnable, new Scanner(stdinBytes));
-            }
-            runnable.run();
+            var in = stdinBytes != null ? new Scanner(stdinBytes) : new Scanner(System.in);
+            program.run(in, printOut);
         }
 
         assertEquals(
@@ -0,0 +1,68 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JfrEventsTest {
+
+    @Test
+    void givenRecording_whenCompilingAndRunning_thenEventsRecorded(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("events.jfr");
+        try (var recording = new Recording()) {
+            recording.enable("basic.CompilePhase");
+            recording.enable("basic.ProgramRun");
+            recording.enable("basic.InputWait");
+            recording.enable("basic.GosubDepth");
+            recording.start();
+            var program = new BasicEngine(OptimisationLevel.O1, 1, false).compile(
+                "10 INPUT A\n" +
+                "20 GOSUB 100\n" +
+                "30 END\n" +
+                "100 GOSUB 200\n" +
+                "110 RETURN\n" +
+                "200 PRINT A\n" +
+                "210 RETURN"
+            );
+            var in = new Scanner(new ByteArrayInputStream("42\n".getBytes(StandardCharsets.UTF_8)));
+            program.run(in, new PrintStream(new ByteArrayOutputStream()));
+            recording.stop();
+            recording.dump(file);
+        }
+        var events = RecordingFile.readAllEvents(file);
+
+        var phases = events.stream()
+            .filter(event -> event.getEventType().getName().equals("basic.CompilePhase"))
+            .map(event -> event.getString("phase"))
+            .toList();
+        assertTrue(phases.containsAll(List.of("parse", "type-check", "optimise", "codegen", "define-class")), phases.toString());
+
+        var run = single(events, "basic.ProgramRun");
+        // " 42 " and a newline
+        assertEquals(5, run.getLong("charactersPrinted"));
+        assertEquals(2, run.getInt("maxGosubDepth"));
+        assertFalse(run.getBoolean("waitingForInput"));
+        assertEquals("FLOAT", single(events, "basic.InputWait").getString("dataType"));
+        assertEquals(2, events.stream().filter(event -> event.getEventType().getName().equals("basic.GosubDepth")).count());
+    }
+
+    private RecordedEvent single(List<RecordedEvent> events, String name) {
+        var matching = events.stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
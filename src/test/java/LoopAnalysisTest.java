@@ -0,0 +1,161 @@
+import ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoopAnalysisTest {
+
+    @Test
+    void givenIfGotoLoop_whenAnalysing_thenLoopAndInductionVariableFound() throws IOException {
+        var program = parse(
+            "10 I = 1\n" +
+            "20 IF I > 3 THEN 60\n" +
+            "30 PRINT I\n" +
+            "40 I = I + 1\n" +
+            "50 GOTO 20\n" +
+            "60 END"
+        );
+        assertEquals(
+            List.of(new LoopAnalysis.NaturalLoop("20", "50", List.of("20", "30", "40", "50"), Map.of("I", 1.0f))),
+            LoopAnalysis.findLoops(program)
+        );
+    }
+
+    @Test
+    void givenConditionalUpdates_whenAnalysing_thenNotInductionVariables() throws IOException {
+        // J is only stepped when the IF is true and K only when 40 isn't jumped over
+        var program = parse(
+            "10 I = 1\n" +
+            "20 IF I > 3 THEN 80\n" +
+            "30 IF I = 2 THEN J = J + 1\n" +
+            "40 IF I = 3 THEN 60\n" +
+            "50 K = K + 2\n" +
+            "60 I = I + 1\n" +
+            "70 GOTO 20\n" +
+            "80 END"
+        );
+        assertEquals(
+            List.of(new LoopAnalysis.NaturalLoop("20", "70", List.of("20", "30", "40", "50", "60", "70"), Map.of("I", 1.0f))),
+            LoopAnalysis.findLoops(program)
+        );
+    }
+
+    @Test
+    void givenVariablesAlsoWrittenByOtherStatements_whenAnalysing_thenNotInductionVariables() throws IOException {
+        // J, K and L are stepped every iteration, but are also set by INPUT, READ and FOR
+        var program = parse(
+            "10 I = 1\n" +
+            "20 IF I > 3 THEN 90\n" +
+            "30 J = J + 1 : K = K + 1 : L = L + 1 : I = I + 1\n" +
+            "40 INPUT J\n" +
+            "50 READ K\n" +
+            "60 FOR L = 1 TO 2\n" +
+            "70 NEXT L\n" +
+            "80 GOTO 20\n" +
+            "90 DATA 1, 2, 3"
+        );
+        assertEquals(
+            List.of(
+                new LoopAnalysis.NaturalLoop("60", "70", List.of("60", "70"), Map.of()),
+                new LoopAnalysis.NaturalLoop("20", "80", List.of("20", "30", "40", "50", "60", "70", "80"), Map.of("I", 1.0f))
+            ),
+            LoopAnalysis.findLoops(program)
+        );
+    }
+
+    @Test
+    void givenForLoopAndSubroutine_whenAnalysing_thenLoopsFound() throws IOException {
+        var program = parse(
+            "10 FOR I = 1 TO 3\n" +
+            "20 GOSUB 100\n" +
+            "30 NEXT I\n" +
+            "40 END\n" +
+            "100 J = 5\n" +
+            "110 J = J - 1\n" +
+            "120 IF J > 0 THEN 110\n" +
+            "130 RETURN"
+        );
+        assertEquals(
+            List.of(
+                new LoopAnalysis.NaturalLoop("10", "30", List.of("10", "20", "30"), Map.of()),
+                new LoopAnalysis.NaturalLoop("110", "120", List.of("110", "120"), Map.of("J", -1.0f))
+            ),
+            LoopAnalysis.findLoops(program)
+        );
+    }
+
+    @Test
+    void givenNestedForLoopsWithBareNext_whenAnalysing_thenInnermostLoopClosedFirst() throws IOException {
+        var program = parse(
+            "10 FOR I = 1 TO 2\n" +
+            "20 FOR J = 1 TO 2\n" +
+            "30 NEXT\n" +
+            "40 NEXT"
+        );
+        assertEquals(
+            List.of(
+                new LoopAnalysis.NaturalLoop("20", "30", List.of("20", "30"), Map.of()),
+                new LoopAnalysis.NaturalLoop("10", "40", List.of("10", "20", "30", "40"), Map.of())
+            ),
+            LoopAnalysis.findLoops(program)
+        );
+    }
+
+    @Test
+    void givenBackwardGotoIntoMiddleOfRegion_whenAnalysing_thenNoLoopFound() throws IOException {
+        // 20 can be entered from both 10 and 40, so 30 -> 20 is not a back edge of a natural loop
+        var program = parse(
+            "10 IF A = 1 THEN 30\n" +
+            "20 PRINT 1\n" +
+            "30 PRINT 2\n" +
+            "40 IF A = 2 THEN 20"
+        );
+        assertEquals(List.of(), LoopAnalysis.findLoops(program));
+    }
+
+    @Test
+    void givenTopTestedLoop_whenRotating_thenBackEdgeIsLoopCondition() throws IOException {
+        var program = parse(
+            "10 I = 1\n" +
+            "20 IF I > 3 THEN 60\n" +
+            "30 PRINT I\n" +
+            "40 I = I + 1\n" +
+            "50 GOTO 20\n" +
+            "60 END"
+        );
+        var expected = parse(
+            "10 I = 1\n" +
+            "20 IF I > 3 THEN 60\n" +
+            "30 PRINT I\n" +
+            "40 I = I + 1\n" +
+            "50 IF I <= 3 THEN 30 : GOTO 60\n" +
+            "60 END"
+        );
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O2, Duration.ofMinutes(1));
+        assertEquals(expected, passManager.run(program));
+    }
+
+    @Test
+    void givenLoopNotTestingInductionVariable_whenRotating_thenLeftAsItIs() throws IOException {
+        // A is only set by INPUT, so this isn't a counted loop
+        var program = parse(
+            "10 INPUT A\n" +
+            "20 IF A > 3 THEN 50\n" +
+            "30 INPUT A\n" +
+            "40 GOTO 20\n" +
+            "50 END"
+        );
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O2, Duration.ofMinutes(1));
+        assertEquals(program, passManager.run(program));
+    }
+
+    private Program parse(String source) throws IOException {
+        return new Parser().parse(new StringReader(source));
+    }
+}
@@ -17,9 +17,12 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ParserTest {
 
@@ -278,4 +281,43 @@ class ParserTest {
         );
     }
 
-}
\ No newline at end of file
+    @Test
+    public void givenLargeProgram_whenParsingInParallel_thenSameAsSequentialParse() throws IOException {
+        var source = new StringBuilder();
+        // numbered backwards (with some duplicates) so the sort has work to do
+        for (var i = 20000; i > 0; i--) {
+            source.append(i - i % 7).append(" A$ = MID$(\"HELLO\", 2) : REM ").append(i).append('\n');
+            source.append(i - i % 7).append(" IF A < ").append(i).append(" THEN PRINT A; \"X\"\n");
+        }
+        assertTrue(source.length() > 4 * Parser.ParseTask.CHUNK_SIZE);
+        assertEquals(new Parser().parse(source), new Parser().parseParallel(source));
+    }
+
+    @Test
+    public void givenErrorInLargeProgram_whenParsingInParallel_thenSameErrorAsSequentialParse() {
+        var source = new StringBuilder();
+        for (var i = 1; i <= 20000; i++) {
+            source.append(i).append(i == 15000 ? " PRINT (1\n" : " PRINT 1\n");
+        }
+        var sequential = assertThrows(IllegalStateException.class, () -> new Parser().parse(source));
+        var parallel = assertThrows(IllegalStateException.class, () -> new Parser().parseParallel(source));
+        assertEquals(sequential.getMessage(), parallel.getMessage());
+    }
+
+    @Test
+    public void givenFractionalLineNumber_whenParsingOrStreamingLines_thenParseError() {
+        var source = "10 PRINT 1\n20. PRINT 2\n";
+        var parsed = assertThrows(IllegalStateException.class, () -> new Parser().parse(source));
+        var streamed = assertThrows(IllegalStateException.class, () -> new Parser().streamLines(source));
+        assertEquals("Line 20.: Line numbers must be whole numbers", parsed.getMessage());
+        assertEquals(parsed.getMessage(), streamed.getMessage());
+    }
+
+    @Test
+    public void givenUnorderedLines_whenStreamingLines_thenSameLinesAsParse() throws IOException {
+        var source = "200 GOTO 100\n\n  100 PRINT \"HELLO\" : REM 300\n150 A = 1\n100 PRINT 2\n";
+        var lines = new ArrayList<Line>();
+        new Parser().streamLines(source).forEach(lines::add);
+        assertEquals(new Parser().parse(source).lines(), lines);
+    }
+}
@@ -0,0 +1,80 @@
+import ast.DataType;
+import ast.FloatConstant;
+import ast.LetStatement;
+import ast.Line;
+import ast.Program;
+import ast.VarName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PassManagerTest {
+
+    @Test
+    void givenConstantExpression_whenOptimising_thenExpressionFolded() throws IOException {
+        var program = new Parser().parse(new StringReader(
+            "100 A = (1 + 2) * 4 + 2 ^ 3"
+        ));
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O1, Duration.ofMinutes(1));
+        assertEquals(
+            new Program(List.of(
+                new Line("100", List.of(new LetStatement(new VarName("A", DataType.FLOAT), new FloatConstant(20.0f))))
+            )),
+            passManager.run(program)
+        );
+        var report = passManager.getReports().get(0);
+        assertEquals("constant-folding", report.name());
+        assertEquals(PassReport.Status.RAN, report.status());
+        assertEquals(10, report.nodesBefore());
+        assertEquals(2, report.nodesAfter());
+    }
+
+    @Test
+    void givenO0_whenOptimising_thenNoPassesRun() throws IOException {
+        var program = new Parser().parse(new StringReader("100 A = 1 + 2"));
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O0, Duration.ofMinutes(1));
+        assertEquals(program, passManager.run(program));
+        assertEquals(List.of(), passManager.getReports());
+    }
+
+    @Test
+    void givenDependencies_whenSelectingPasses_thenDependenciesRunFirst() {
+        var passManager = new PassManager(OptimisationLevel.O1, Duration.ofMinutes(1));
+        passManager.register(new TestPass("b", OptimisationLevel.O1, List.of("a")));
+        passManager.register(new TestPass("a", OptimisationLevel.O2, List.of()));
+        passManager.register(new TestPass("c", OptimisationLevel.O2, List.of()));
+        assertEquals(
+            List.of("a", "b"),
+            passManager.selectPasses().stream().map(Pass::name).toList()
+        );
+    }
+
+    @Test
+    void givenExhaustedBudget_whenOptimising_thenPassesSkipped() throws IOException {
+        var program = new Parser().parse(new StringReader("100 A = 1 + 2"));
+        var passManager = PassManager.withDefaultPasses(OptimisationLevel.O2, Duration.ofNanos(-1));
+        assertEquals(program, passManager.run(program));
+        assertEquals(PassReport.Status.SKIPPED, passManager.getReports().get(0).status());
+    }
+
+    @Test
+    void givenCircularDependencies_whenSelectingPasses_thenExceptionThrown() {
+        var passManager = new PassManager(OptimisationLevel.O1, Duration.ofMinutes(1));
+        passManager.register(new TestPass("a", OptimisationLevel.O1, List.of("b")));
+        passManager.register(new TestPass("b", OptimisationLevel.O1, List.of("a")));
+        assertThrows(IllegalStateException.class, passManager::selectPasses);
+    }
+
+    record TestPass(String name, OptimisationLevel level, List<String> dependencies) implements Pass {
+        @Override
+        public Program run(Program program) {
+            return program;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileReportTest {
+
+    @Test
+    void givenProfiledProgram_whenRun_thenLinesCountedAndReported(@TempDir Path dir) throws Exception {
+        var program = new Parser().parse(
+            "10 FOR I = 1 TO 3\n" +
+            "20 GOSUB 100\n" +
+            "30 NEXT I\n" +
+            "40 END\n" +
+            "100 A = A + I\n" +
+            "110 RETURN"
+        );
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withProfiling(JavaASM.Profiling.LINES_AND_GOSUBS));
+        program.visit(javaAsm);
+        var compiled = CompiledProgram.define("profile_test", javaAsm.generateClass("profile_test"));
+        var instance = compiled.newInstance(null, new PrintStream(new ByteArrayOutputStream()));
+        instance.run();
+
+        var profile = instance.getProfile();
+        assertArrayEquals(new long[] {1, 3, 3, 1, 3, 3}, profile.lineCounts());
+        assertArrayEquals(new long[] {0, 0, 0, 0, 3, 0}, profile.gosubCalls());
+
+        var report = new ProfileReport(javaAsm.getSourceLines(), profile);
+        var output = new ByteArrayOutputStream();
+        report.print(new PrintStream(output, true, StandardCharsets.UTF_8));
+        var reportLines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals("    20              3  21.43%  20 GOSUB 100", reportLines.get(1));
+        assertTrue(reportLines.get(9).startsWith("   100              3"), reportLines.get(9));
+
+        var csv = dir.resolve("profile.csv");
+        report.writeCsv(csv);
+        var csvLines = Files.readAllLines(csv);
+        assertEquals(List.of(
+            "line,count,share,gosub_calls,gosub_nanos,source",
+            "10,1,0.0714,0,0,\"10 FOR I = 1.0 TO 3.0\""
+        ), csvLines.subList(0, 2));
+        assertEquals(7, csvLines.size());
+    }
+}
@@ -0,0 +1,365 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/*
+ Generates valid BASIC programs of any size and shape, using everything the
+ Parser accepts, for scaling tests and benchmarks.  The same seed and shape
+ always give the same program.
+
+ Programs always finish and don't fail when run: the only backward jumps are
+ FOR loops with constant bounds and RETURNs (subroutines only GOSUB deeper
+ ones), every variable is assigned before anything else, array indexes and
+ string positions are kept in range, strings are cut short whenever they're
+ stored, READ never runs out of DATA and INPUT and STOP sit behind IFs that
+ are never true.
+ */
+public class ProgramGenerator {
+    private static final String[] NUMBERS = {"A1", "B2", "C3", "X1", "Y2", "Z3"};
+    private static final String[] STRINGS = {"S1$", "T2$", "W3$"};
+    private static final String NUMBER_ARRAY = "A9";
+    private static final String STRING_ARRAY = "S9$";
+    private static final int ARRAY_SIZE = 10;
+    // always 0, for IFs that are never true
+    private static final String ZERO = "Z0";
+    private static final String[] WORDS = {"FOO", "BAR", "HELLO", "WORLD", "X", "BASIC", "GAME OVER"};
+    private static final String[] RELATIONS = {"=", "<>", "<", "<=", ">", ">="};
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([BS])(\\d+)}");
+    private static final int DATA_PER_LINE = 8;
+
+    private final Random random;
+    private final Shape shape;
+    private final List<String> loopVariables = new ArrayList<>();
+    private final List<List<String>> blocks = new ArrayList<>();
+    private final List<List<String>> subroutines = new ArrayList<>();
+    private int dataPairsRead;
+
+    /*
+     lines: roughly how many lines the program has
+     expressionDepth: how deeply expressions nest (operators and functions)
+     loopNesting: how deeply FOR loops nest
+     dataValues: how many values are in DATA statements
+     gosubDepth: how many levels of subroutines there are, each GOSUBing the next
+     gosubFanOut: how many subroutines there are at each level
+     */
+    public record Shape(int lines, int expressionDepth, int loopNesting, int dataValues, int gosubDepth, int gosubFanOut) {
+        public static final Shape DEFAULT = new Shape(100, 3, 2, 16, 3, 2);
+
+        public Shape withLines(int lines) {
+            return new Shape(lines, expressionDepth, loopNesting, dataValues, gosubDepth, gosubFanOut);
+        }
+
+        public Shape withExpressionDepth(int expressionDepth) {
+            return new Shape(lines, expressionDepth, loopNesting, dataValues, gosubDepth, gosubFanOut);
+        }
+
+        public Shape withLoopNesting(int loopNesting) {
+            return new Shape(lines, expressionDepth, loopNesting, dataValues, gosubDepth, gosubFanOut);
+        }
+
+        public Shape withDataValues(int dataValues) {
+            return new Shape(lines, expressionDepth, loopNesting, dataValues, gosubDepth, gosubFanOut);
+        }
+
+        public Shape withGosubs(int gosubDepth, int gosubFanOut) {
+            return new Shape(lines, expressionDepth, loopNesting, dataValues, gosubDepth, gosubFanOut);
+        }
+    }
+
+    public ProgramGenerator(long seed, Shape shape) {
+        this.random = new Random(seed);
+        this.shape = shape;
+    }
+
+    public static String generate(long seed, Shape shape) {
+        return new ProgramGenerator(seed, shape).generate();
+    }
+
+    public String generate() {
+        var dataLines = (dataPairs() + DATA_PER_LINE / 2 - 1) / (DATA_PER_LINE / 2);
+        // added once they're all generated, as their own statements mustn't GOSUB the first level
+        var generated = new ArrayList<List<String>>();
+        for (var level = 0; level < shape.gosubDepth(); level++) {
+            for (var i = 0; i < shape.gosubFanOut(); i++) {
+                generated.add(subroutine(level));
+            }
+        }
+        subroutines.addAll(generated);
+        var subroutineLines = subroutines.stream().mapToInt(List::size).sum();
+
+        blocks.add(List.of(
+            "DIM " + NUMBER_ARRAY + "(" + ARRAY_SIZE + "), " + STRING_ARRAY + "(" + ARRAY_SIZE + ")",
+            ZERO + " = 0: " + String.join(": ", assignments()),
+            // string array elements start off null
+            "FOR I9 = 1 TO " + ARRAY_SIZE + ": " + STRING_ARRAY + "(I9) = \"\": NEXT I9"
+        ));
+        var mainLines = 3;
+        while (mainLines < shape.lines() - subroutineLines - dataLines - 1) {
+            var block = topLevelBlock();
+            blocks.add(block);
+            mainLines += block.size();
+        }
+        blocks.add(List.of("END"));
+        return render(dataLines);
+    }
+
+    private int dataPairs() {
+        return shape.dataValues() / 2;
+    }
+
+    private List<String> assignments() {
+        var assignments = new ArrayList<String>();
+        for (var name: NUMBERS) {
+            assignments.add(name + " = " + random.nextInt(10));
+        }
+        for (var name: STRINGS) {
+            assignments.add(name + " = " + stringConstant());
+        }
+        return assignments;
+    }
+
+    // a line that can jump forward, READ, or a FOR loop, nesting as deep as the shape allows
+    private List<String> topLevelBlock() {
+        var nextBlock = blocks.size() + 1;
+        return switch (random.nextInt(12)) {
+            case 0 -> List.of("GOTO {B" + nextBlock + "}");
+            case 1 -> List.of("IF " + condition(depth()) + " THEN {B" + nextBlock + "}");
+            case 2 -> List.of("ON INT(RND(1) * 3) + 1 GO TO {B" + nextBlock + "}, {B" + nextBlock + "}, {B" + nextBlock + "}");
+            case 3 -> dataPairs() == 0 ? List.of(simpleStatement()) : List.of(read());
+            case 4, 5, 6 -> shape.loopNesting() == 0 ? List.of(simpleStatement()) : loop(1);
+            default -> List.of(statements());
+        };
+    }
+
+    private String read() {
+        var restore = "";
+        if (dataPairsRead == dataPairs()) {
+            dataPairsRead = 0;
+            restore = random.nextBoolean() ? "RESTORE: " : "RESTORE {D0}: ";
+        }
+        dataPairsRead++;
+        return restore + "READ " + pick(NUMBERS) + ", " + pick(STRINGS);
+    }
+
+    private List<String> loop(int nesting) {
+        var variable = "I" + nesting;
+        loopVariables.add(variable);
+        var lines = new ArrayList<String>();
+        var from = 1 + random.nextInt(2);
+        var to = from + random.nextInt(3);
+        lines.add(random.nextBoolean()
+            ? "FOR " + variable + " = " + from + " TO " + to
+            : "FOR " + variable + " = " + to + " TO " + from + " STEP -1");
+        var bodyLines = 1 + random.nextInt(3);
+        for (var i = 0; i < bodyLines; i++) {
+            if (nesting < shape.loopNesting() && random.nextInt(3) == 0) {
+                lines.addAll(loop(nesting + 1));
+            } else {
+                lines.add(statements());
+            }
+        }
+        lines.add(switch (random.nextInt(3)) {
+            case 0 -> "NEXT";
+            // not statements(), as a REM would swallow the NEXT
+            case 1 -> simpleStatement() + ": NEXT " + variable;
+            default -> "NEXT " + variable;
+        });
+        loopVariables.remove(variable);
+        return lines;
+    }
+
+    private List<String> subroutine(int level) {
+        var lines = new ArrayList<String>();
+        lines.add(statements());
+        if (random.nextBoolean()) {
+            lines.add(simpleStatement());
+        }
+        if (level + 1 < shape.gosubDepth()) {
+            lines.add("GOSUB {S" + subroutineIndex(level + 1) + "}");
+        }
+        lines.add("RETURN");
+        return lines;
+    }
+
+    private int subroutineIndex(int level) {
+        return level * shape.gosubFanOut() + random.nextInt(shape.gosubFanOut());
+    }
+
+    private String statements() {
+        var statements = new ArrayList<String>();
+        var count = 1 + random.nextInt(3);
+        for (var i = 0; i < count; i++) {
+            statements.add(simpleStatement());
+        }
+        // REM takes the rest of the line
+        if (random.nextInt(8) == 0) {
+            statements.add("REM " + pick(WORDS) + " \"" + pick(WORDS) + ": GOTO 10");
+        }
+        return String.join(": ", statements);
+    }
+
+    // a statement that carries on to the next one
+    private String simpleStatement() {
+        return switch (random.nextInt(14)) {
+            case 0, 1 -> pick(NUMBERS) + " = " + number(depth());
+            case 2 -> "LET " + pick(NUMBERS) + " = " + number(depth());
+            case 3 -> pick(STRINGS) + " = LEFT$(" + string(depth()) + ", 20)";
+            case 4 -> NUMBER_ARRAY + "(" + index(depth()) + ") = " + number(depth());
+            case 5 -> STRING_ARRAY + "(" + index(depth()) + ") = LEFT$(" + string(depth()) + ", 20)";
+            case 6, 7 -> print();
+            case 8 -> "IF " + condition(depth()) + " THEN " + pick(NUMBERS) + " = " + number(depth());
+            case 9 -> subroutines.isEmpty() ? print() : "GOSUB {S" + subroutineIndex(0) + "}";
+            case 10 -> "IF " + ZERO + " > 1 THEN INPUT \"" + pick(WORDS) + "\"; " + pick(NUMBERS) + ", " + pick(STRINGS);
+            case 11 -> "IF " + ZERO + " > 1 THEN INPUT " + pick(STRINGS);
+            case 12 -> "IF " + ZERO + " > 1 THEN STOP";
+            default -> "IF " + condition(depth()) + " THEN PRINT " + string(depth());
+        };
+    }
+
+    private String print() {
+        var print = new StringBuilder("PRINT");
+        var items = random.nextInt(4);
+        for (var i = 0; i < items; i++) {
+            var separator = i == 0 ? " " : switch (random.nextInt(3)) {
+                case 0 -> "; ";
+                case 1 -> ", ";
+                default -> " ";
+            };
+            var item = switch (random.nextInt(4)) {
+                case 0 -> "TAB(" + random.nextInt(30) + ")";
+                case 1 -> number(depth());
+                default -> string(depth());
+            };
+            // with no separator a minus would subtract from the item before
+            if (i > 0 && separator.equals(" ") && item.startsWith("-")) {
+                item = "(" + item + ")";
+            }
+            print.append(separator).append(item);
+        }
+        if (random.nextInt(4) == 0) {
+            print.append(random.nextBoolean() ? ";" : ",");
+        }
+        return print.toString();
+    }
+
+    // half of all expressions are as deep as they can be
+    private int depth() {
+        return random.nextBoolean() ? shape.expressionDepth() : random.nextInt(shape.expressionDepth() + 1);
+    }
+
+    private String number(int depth) {
+        if (depth == 0) {
+            return switch (random.nextInt(4)) {
+                case 0 -> String.valueOf(random.nextInt(100));
+                case 1 -> random.nextInt(10) + "." + random.nextInt(10);
+                case 2 -> loopVariables.isEmpty() ? pick(NUMBERS) : pick(loopVariables.toArray(String[]::new));
+                default -> pick(NUMBERS);
+            };
+        }
+        var smaller = depth - 1;
+        return switch (random.nextInt(12)) {
+            case 0 -> number(smaller) + " + " + number(smaller);
+            case 1 -> number(smaller) + " - " + number(smaller);
+            case 2 -> number(smaller) + " * " + number(smaller);
+            case 3 -> "(" + number(smaller) + " + " + number(smaller) + ") / " + number(smaller);
+            case 4 -> "(" + number(smaller) + ") ^ 2";
+            case 5 -> "-" + number(smaller);
+            case 6 -> pick("INT", "ABS", "SIN", "SGN") + "(" + number(smaller) + ")";
+            case 7 -> "RND(1) * " + number(smaller);
+            case 8 -> "LEN(" + string(smaller) + ")";
+            case 9 -> "ASC(\"A\" + " + string(smaller) + ")";
+            case 10 -> "VAL(STR$(" + number(smaller) + "))";
+            default -> NUMBER_ARRAY + "(" + index(smaller) + ")";
+        };
+    }
+
+    private String string(int depth) {
+        if (depth == 0) {
+            return switch (random.nextInt(3)) {
+                case 0 -> stringConstant();
+                case 1 -> STRING_ARRAY + "(" + (1 + random.nextInt(ARRAY_SIZE)) + ")";
+                default -> pick(STRINGS);
+            };
+        }
+        var smaller = depth - 1;
+        return switch (random.nextInt(7)) {
+            case 0 -> string(smaller) + " + " + string(smaller);
+            case 1 -> "LEFT$(" + string(smaller) + ", " + (1 + random.nextInt(10)) + ")";
+            case 2 -> "RIGHT$(" + string(smaller) + ", " + (1 + random.nextInt(10)) + ")";
+            case 3 -> "MID$(" + string(smaller) + ", 1, " + (1 + random.nextInt(10)) + ")";
+            case 4 -> "MID$(" + string(smaller) + ", 1)";
+            case 5 -> "CHR$(65 + " + index(smaller) + ")";
+            default -> "STR$(" + number(smaller) + ")";
+        };
+    }
+
+    // arrays are indexed from 1, so from 1 to ARRAY_SIZE, whatever the number
+    private String index(int depth) {
+        return "1 + INT(ABS(SIN(" + number(depth) + ")) * " + (ARRAY_SIZE - 1) + ")";
+    }
+
+    private String condition(int depth) {
+        var comparison = random.nextInt(4) == 0
+            ? string(Math.max(0, depth - 1)) + " " + pick("=", "<>") + " " + string(Math.max(0, depth - 1))
+            : number(Math.max(0, depth - 1)) + " " + pick(RELATIONS) + " " + number(Math.max(0, depth - 1));
+        if (depth > 1 && random.nextInt(3) == 0) {
+            return comparison + " " + pick("AND", "OR") + " " + condition(depth - 1);
+        }
+        return comparison;
+    }
+
+    private String stringConstant() {
+        return "\"" + pick(WORDS) + "\"";
+    }
+
+    private String pick(String... choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private String render(int dataLines) {
+        var blockLines = new int[blocks.size()];
+        var subroutineLines = new int[subroutines.size()];
+        var lineNumber = 10;
+        for (var i = 0; i < blocks.size(); i++) {
+            blockLines[i] = lineNumber;
+            lineNumber += 10 * blocks.get(i).size();
+        }
+        for (var i = 0; i < subroutines.size(); i++) {
+            subroutineLines[i] = lineNumber;
+            lineNumber += 10 * subroutines.get(i).size();
+        }
+        var firstDataLine = lineNumber;
+
+        var source = new StringBuilder();
+        lineNumber = 10;
+        for (var lines: concat(blocks, subroutines)) {
+            for (var line: lines) {
+                var text = PLACEHOLDER.matcher(line).replaceAll(match -> String.valueOf(
+                    match.group(1).equals("B")
+                        ? blockLines[Integer.parseInt(match.group(2))]
+                        : subroutineLines[Integer.parseInt(match.group(2))]
+                ));
+                source.append(lineNumber).append(' ').append(text.replace("{D0}", String.valueOf(firstDataLine))).append('\n');
+                lineNumber += 10;
+            }
+        }
+        var pairs = dataPairs();
+        for (var line = 0; line < dataLines; line++) {
+            var values = new ArrayList<String>();
+            for (var i = 0; i < DATA_PER_LINE / 2 && pairs > 0; i++, pairs--) {
+                values.add((random.nextBoolean() ? "-" : "") + random.nextInt(1000) + (random.nextBoolean() ? "." + random.nextInt(100) : ""));
+                values.add(stringConstant());
+            }
+            source.append(lineNumber).append(" DATA ").append(String.join(", ", values)).append('\n');
+            lineNumber += 10;
+        }
+        return source.toString();
+    }
+
+    private static List<List<String>> concat(List<List<String>> first, List<List<String>> second) {
+        var all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+}
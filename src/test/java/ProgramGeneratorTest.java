@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgramGeneratorTest {
+
+    @Test
+    void givenSameSeed_whenGenerated_thenSameProgram() {
+        var shape = ProgramGenerator.Shape.DEFAULT;
+        assertEquals(ProgramGenerator.generate(7, shape), ProgramGenerator.generate(7, shape));
+    }
+
+    @ParameterizedTest
+    @EnumSource(OptimisationLevel.class)
+    void givenGeneratedPrograms_whenCompiled_thenRunToTheEnd(OptimisationLevel level) throws Exception {
+        var shapes = new ProgramGenerator.Shape[] {
+            ProgramGenerator.Shape.DEFAULT,
+            ProgramGenerator.Shape.DEFAULT.withExpressionDepth(6),
+            ProgramGenerator.Shape.DEFAULT.withLoopNesting(5),
+            ProgramGenerator.Shape.DEFAULT.withLines(500)
+        };
+        for (var seed = 1; seed <= 5; seed++) {
+            for (var shape: shapes) {
+                compileAndRun(ProgramGenerator.generate(seed, shape), level);
+            }
+        }
+    }
+
+    @Test
+    void givenHugeData_whenCompiled_thenAllRead() throws Exception {
+        compileAndRun(ProgramGenerator.generate(1, ProgramGenerator.Shape.DEFAULT.withDataValues(4000)), OptimisationLevel.O1);
+    }
+
+    @Test
+    void givenDeepGosubs_whenCompiled_thenAllReturn() throws Exception {
+        compileAndRun(ProgramGenerator.generate(1, ProgramGenerator.Shape.DEFAULT.withLines(400).withGosubs(100, 1)), OptimisationLevel.O1);
+    }
+
+    @Test
+    void givenTenThousandLines_whenCompiled_thenTooLargeForOneMethod() throws Exception {
+        var source = ProgramGenerator.generate(1, ProgramGenerator.Shape.DEFAULT.withLines(10_000));
+        var program = new Parser().parse(source);
+        TypeChecker.check(program);
+        assertTrue(program.lines().size() >= 10_000, () -> program.lines().size() + " lines");
+
+        var javaAsm = new JavaASM(TypeChecker::check);
+        program.visit(javaAsm);
+        var e = assertThrows(IllegalStateException.class, () -> javaAsm.generateClass("scaling_test"));
+        assertTrue(e.getMessage().startsWith("Program too large to compile: "), e.getMessage());
+    }
+
+    private static void compileAndRun(String source, OptimisationLevel level) throws Exception {
+        var program = new Parser().parse(source);
+        TypeChecker.check(program);
+        program = PassManager.withDefaultPasses(level, Duration.ofSeconds(10)).run(program);
+        var javaAsm = new JavaASM(TypeChecker::check);
+        program.visit(javaAsm);
+        var compiled = CompiledProgram.define("scaling_test", javaAsm.generateClass("scaling_test"));
+        // INPUT is never reached, so there's nothing to read
+        compiled.run(null, new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,134 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgramHostTest {
+    private ProgramHost host;
+
+    @AfterEach
+    void closeHost() throws IOException {
+        host.close();
+    }
+
+    @Test
+    void givenManyClients_whenRunningSessions_thenEachGetsOwnOutput() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(16, 1024, Duration.ofSeconds(30), 1024 * 1024));
+        var port = host.listen(0);
+        var clients = Executors.newFixedThreadPool(64);
+        try {
+            var sessions = new ArrayList<Callable<String>>();
+            for (var i = 0; i < 500; i++) {
+                var input = String.valueOf(i);
+                sessions.add(() -> session(port, "10 INPUT A\n20 PRINT A * 2\n", input + "\n"));
+            }
+            var results = clients.invokeAll(sessions);
+            for (var i = 0; i < results.size(); i++) {
+                assertEquals(" " + (i * 2) + " \n", results.get(i).get());
+            }
+        } finally {
+            clients.shutdown();
+        }
+        assertEquals(500, host.getCompletedSessions());
+        assertEquals(0, host.getFailedSessions());
+    }
+
+    @Test
+    void givenSessionWaitingForInput_whenAnotherSessionSubmitted_thenItRunsMeanwhile() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 1024, Duration.ofSeconds(30), 1024 * 1024));
+        var waitingInput = new PipedOutputStream();
+        var waitingOutput = new ByteArrayOutputStream();
+        var waiting = host.submit("10 INPUT A\n20 PRINT A\n", new PipedInputStream(waitingInput), waitingOutput);
+
+        // only one session can run at a time, but the first is just waiting
+        var output = new ByteArrayOutputStream();
+        host.submit("10 PRINT \"HELLO\"\n", InputStream.nullInputStream(), output).get(10, TimeUnit.SECONDS);
+        assertEquals("HELLO\n", output.toString(StandardCharsets.UTF_8));
+        assertFalse(waiting.isDone());
+
+        waitingInput.write("7\n".getBytes(StandardCharsets.UTF_8));
+        waitingInput.close();
+        waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(" 7 \n", waitingOutput.toString(StandardCharsets.UTF_8));
+        assertEquals(2, host.getCompletedSessions());
+    }
+
+    @Test
+    void givenTooMuchOutput_whenRunningSession_thenSessionStopped() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 100, Duration.ofSeconds(30), 1024 * 1024));
+        var output = session(host.listen(0), "10 PRINT \"X\"\n20 GOTO 10\n", "");
+        assertTrue(output.endsWith("ERROR: Output limit of 100 bytes exceeded\n"), output);
+        assertEquals(1, host.getFailedSessions());
+    }
+
+    @Test
+    void givenSessionWaitingTooLong_whenRunningSession_thenSessionStopped() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 100, Duration.ofMillis(200), 1024 * 1024));
+        var port = host.listen(0);
+        // the client never sends the input the program waits for
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.getOutputStream().write("10 INPUT A\n20 PRINT A\nRUN\n".getBytes(StandardCharsets.UTF_8));
+            var output = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(output.startsWith("ERROR: "), output);
+        }
+        assertEquals(1, host.getFailedSessions());
+    }
+
+    @Test
+    void givenSessionLoopingForever_whenRunningSession_thenSessionStopped() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 100, Duration.ofMillis(200), 1024 * 1024));
+        // never reads or writes, so only the program itself can notice it's out of time
+        var output = session(host.listen(0), "10 A = A + 1\n20 GOTO 10\n", "");
+        assertEquals("ERROR: Time limit exceeded\n", output);
+        assertEquals(1, host.getFailedSessions());
+    }
+
+    @Test
+    void givenSessionDimmingTooMuch_whenRunningSession_thenSessionStopped() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 100, Duration.ofSeconds(30), 1024 * 1024));
+        var output = session(host.listen(0), "10 DIM A(1000, 1000)\n20 PRINT \"NOT HERE\"\n", "");
+        assertEquals("ERROR: DIM exceeds memory quota of 1048576 bytes\n", output);
+        assertEquals(1, host.getFailedSessions());
+    }
+
+    @Test
+    void givenSessionFillingStringArray_whenRunningSession_thenSessionStopped() throws Exception {
+        host = new ProgramHost(new BasicEngine(), new ProgramHost.Limits(1, 100, Duration.ofSeconds(30), 1024 * 1024));
+        // each string is well under the longest allowed, but a thousand of them aren't
+        var program =
+            "10 DIM A$(1000)\n" +
+            "20 S$ = \"X\"\n" +
+            "30 FOR I = 1 TO 17: S$ = S$ + S$: NEXT I\n" +
+            "40 FOR I = 1 TO 1000: A$(I) = S$: NEXT I\n" +
+            "50 PRINT \"NOT HERE\"\n";
+        var output = session(host.listen(0), program, "");
+        assertEquals("ERROR: Strings exceed memory quota of 1048576 bytes\n", output);
+        assertEquals(1, host.getFailedSessions());
+    }
+
+    // stand in for a real client: sends the program and input then reads all the output
+    private String session(int port, String program, String input) throws IOException {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var out = socket.getOutputStream();
+            out.write((program + "RUN\n" + input).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgramMonitorTest {
+
+    @Test
+    void givenMonitoredProgram_whenRegistered_thenStatusReadOverJmx() throws Exception {
+        var program = new Parser().parse(
+            "10 READ A, B\n" +
+            "20 FOR I = 1 TO 3\n" +
+            "30 PRINT I;\n" +
+            "40 NEXT I\n" +
+            "50 GOSUB 100\n" +
+            "60 END\n" +
+            "100 INPUT C\n" +
+            "110 RETURN\n" +
+            "120 DATA 1, 2, 3"
+        );
+        var javaAsm = new JavaASM(TypeChecker::check, JavaASM.Options.DEFAULT.withResumable(true).withMonitored(true));
+        program.visit(javaAsm);
+        var compiled = CompiledProgram.define("monitor_test", javaAsm.generateClass("monitor_test"));
+        var instance = compiled.newInstance(null, new PrintStream(new ByteArrayOutputStream()));
+
+        var server = MBeanServerFactory.newMBeanServer();
+        try (var monitor = new ProgramMonitor(server, "basic")) {
+            var name = new ObjectName("basic:type=Program,name=\"session-1\"");
+            try (var registration = monitor.register("session-1", instance)) {
+                instance.run();
+                // 10, 20, 30 and 40 three times, 50 and 100, printing " 1  2  3 "
+                assertEquals(10L, server.getAttribute(name, "LinesExecuted"));
+                assertEquals(100, server.getAttribute(name, "CurrentLine"));
+                assertEquals(1, server.getAttribute(name, "GosubDepth"));
+                assertEquals(2, server.getAttribute(name, "DataPointer"));
+                assertEquals(9L, server.getAttribute(name, "CharactersPrinted"));
+                assertEquals(true, server.getAttribute(name, "WaitingForInput"));
+                assertEquals(false, server.getAttribute(name, "Running"));
+
+                instance.offerInput("4");
+                instance.run();
+                assertEquals(60, server.getAttribute(name, "CurrentLine"));
+                assertEquals(0, server.getAttribute(name, "GosubDepth"));
+                assertEquals(12L, server.getAttribute(new ObjectName("basic:type=Programs"), "TotalLinesExecuted"));
+            }
+            assertFalse(server.isRegistered(name));
+            assertEquals(0, monitor.getProgramCount());
+        }
+        assertTrue(server.queryNames(new ObjectName("basic:*"), null).isEmpty());
+    }
+}
@@ -1,7 +1,11 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -106,9 +110,13 @@ class TokenizerTest {
         assertEquals(
             List.of(
                 new Token("INT", Token.Type.FUNCTION),
+                new Token("LEFT$", Token.Type.FUNCTION),
+                new Token("LE", Token.Type.NAME),
+                new Token("LEFT", Token.Type.NAME),
+                new Token("INTX", Token.Type.NAME),
                 new Token(null, Token.Type.EOF)
             ),
-            tokenize("INT")
+            tokenize("INT LEFT$ LE LEFT INTX")
         );
     }
 
@@ -132,9 +140,33 @@ class TokenizerTest {
         assertEquals("Unexpected character: £", ex.getMessage());
     }
 
+    @Test
+    void givenMappedFile_whenTokenizing_thenSameTokensAsReader(@TempDir Path tempDir) throws IOException {
+        var code = "100 PRINT \"HELLO WORLD\" : REM COMMENT\n200 A$ = MID$(\"ABC\", 2) : IF A<>2 THEN 100";
+        var ascii = tempDir.resolve("ascii.bas");
+        Files.writeString(ascii, code);
+        assertEquals(tokenize(code), tokenize(new Tokenizer(Tokenizer.mapFile(ascii))));
+        var utf8 = tempDir.resolve("utf8.bas");
+        Files.writeString(utf8, code + " : PRINT \"£\"", StandardCharsets.UTF_8);
+        assertEquals(tokenize(code + " : PRINT \"£\""), tokenize(new Tokenizer(Tokenizer.mapFile(utf8))));
+    }
+
+    @Test
+    void givenComment_whenReadingTillEndOfLine_thenRestOfLineReturned() throws IOException {
+        var tokenizer = new Tokenizer(new StringReader("10 REM HELLO: WORLD\n20"));
+        tokenizer.next();
+        tokenizer.next();
+        assertEquals(" HELLO: WORLD", tokenizer.readTillEndOfLine());
+        assertEquals(new Token("\n", Token.Type.EOL), tokenizer.next());
+        assertEquals(new Token("20", Token.Type.NUMBER), tokenizer.next());
+    }
+
     private List<Token> tokenize(String code) throws IOException {
+        return tokenize(new Tokenizer(new StringReader(code)));
+    }
+
+    private List<Token> tokenize(Tokenizer tokenizer) {
         List<Token> tokens = new ArrayList<>();
-        Tokenizer tokenizer = new Tokenizer(new StringReader(code));
         while (true) {
             Token token = tokenizer.next();
             tokens.add(token);
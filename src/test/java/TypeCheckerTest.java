@@ -0,0 +1,80 @@
+import ast.DataType;
+import ast.Expression;
+import ast.LetStatement;
+import ast.PrintStatement;
+import ast.Program;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TypeCheckerTest {
+
+    @Test
+    void givenWellTypedProgram_whenChecking_thenTypesRecorded() throws IOException {
+        var program = parse(
+            "100 A$ = \"X\" + CHR$(65)\n" +
+            "200 PRINT A$ = \"XA\""
+        );
+        var types = TypeChecker.check(program);
+        var let = (LetStatement) program.lines().get(0).statements().get(0);
+        var print = (PrintStatement) program.lines().get(1).statements().get(0);
+        assertEquals(DataType.STRING, types.of(let.expression()));
+        // comparing strings still gives a FLOAT result
+        assertEquals(DataType.FLOAT, types.of((Expression) print.printables().get(0)));
+    }
+
+    @Test
+    void givenSeveralTypeErrors_whenChecking_thenAllErrorsReported() throws IOException {
+        var program = parse(
+            "100 A = \"X\"\n" +
+            "200 B$ = LEN(1)\n" +
+            "300 C(\"1\") = 2 * \"Y\"\n" +
+            "400 IF A$ THEN 100"
+        );
+        var ex = assertThrows(TypeCheckingException.class, () -> TypeChecker.check(program));
+        assertEquals(
+            List.of(
+                "Line 100: Expected FLOAT expression, but got: StringConstant[constant=X]",
+                "Line 200: Wrong args type for: LEN expected: [STRING], but got: [FLOAT]",
+                "Line 200: Expected STRING expression, but got: FunctionCall[fn=FunctionDef[name=LEN, returnType=FLOAT, argTypes=[STRING]], args=[FloatConstant[constant=1.0]]]",
+                "Line 300: Array indexes must be of type FLOAT",
+                "Line 300: Expected FLOAT expression, but got: StringConstant[constant=Y]",
+                "Line 400: Expected FLOAT expression, but got: Variable[name=VarName[name=A$, dataType=STRING, indexes=[]]]"
+            ),
+            ex.getErrors()
+        );
+    }
+
+    @Test
+    void givenOptimisedProgram_whenGettingTypesAfterPasses_thenOnlyRewrittenExpressionsChecked() throws IOException {
+        // folding leaves a program with nothing to fold as it was, so its types can be used as they are
+        var unfolded = parse("100 A = B + 2");
+        var unfoldedTypes = TypeChecker.check(unfolded);
+        assertSame(unfolded, new ConstantFolding().run(unfolded));
+        assertSame(unfoldedTypes, TypeChecker.afterPasses(unfolded, unfoldedTypes, unfolded));
+
+        var parsed = parse(
+            "100 A = 1 + 2\n" +
+            "200 B$ = A$ + \"X\""
+        );
+        var types = TypeChecker.check(parsed);
+        var folded = new ConstantFolding().run(parsed);
+        var foldedTypes = TypeChecker.afterPasses(parsed, types, folded);
+        var let = (LetStatement) folded.lines().get(0).statements().get(0);
+        assertEquals(DataType.FLOAT, foldedTypes.of(let.expression()));
+        // the line folding didn't change is kept, and its types with it
+        assertSame(parsed.lines().get(1), folded.lines().get(1));
+        var unchanged = (LetStatement) folded.lines().get(1).statements().get(0);
+        assertEquals(DataType.STRING, foldedTypes.of(unchanged.expression()));
+    }
+
+    private Program parse(String source) throws IOException {
+        return new Parser().parse(new StringReader(source));
+    }
+}
@@ -0,0 +1,7 @@
+10 GOSUB 100
+20 FOR I = 1 TO 2
+30 GOSUB 100
+40 NEXT I
+50 END
+100 C = C + 1: PRINT "CALL"; C
+110 RETURN
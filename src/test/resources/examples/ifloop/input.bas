@@ -0,0 +1,25 @@
+10 PRINT "Top tested loop"
+20 I = 1
+30 IF I > 3 THEN 70
+40 PRINT I
+50 I = I + 1
+60 GOTO 30
+70 PRINT "Bottom tested loop"
+80 J = 10
+90 PRINT J
+100 J = J - 2
+110 IF J >= 6 THEN 90
+120 PRINT "Loop with continue"
+130 K = 0
+140 IF K = 5 THEN 190
+150 K = K + 1
+160 IF K = 2 THEN 140
+170 PRINT K
+180 GOTO 140
+190 PRINT "String loop"
+200 A$ = ""
+210 IF A$ = "XXX" THEN 250
+220 A$ = A$ + "X"
+230 PRINT A$
+240 GOTO 210
+250 PRINT "Done"
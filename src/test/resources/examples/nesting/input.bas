@@ -0,0 +1,6 @@
+10 FOR I = 1 TO 2
+20 FOR J = 1 TO 2
+30 PRINT I; J;
+40 NEXT
+50 PRINT
+60 NEXT
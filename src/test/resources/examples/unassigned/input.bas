@@ -0,0 +1,4 @@
+10 PRINT A; "["; B$; "]"
+20 IF C = 0 THEN PRINT "ZERO"
+30 D = E + 1: PRINT D
+40 DIM X(3): X(F + 1) = 2: PRINT X(1)